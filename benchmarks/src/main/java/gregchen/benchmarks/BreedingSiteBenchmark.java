@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen.benchmarks;
+
+import gregchen.BreedingSite;
+import gregchen.EmergenceBuffer;
+import gregchen.Genotype;
+import gregchen.Position;
+import gregchen.Pupa;
+import gregchen.RandomSource;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One update of a breeding site followed by collecting its mature pupae. A site changes
+ * as it is updated (its pupae age, die and emerge), so every operation works on a fresh
+ * copy of the same full site; copy alone measures that overhead, to be subtracted.
+ * @author Greg
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class BreedingSiteBenchmark
+{
+	@Param({"230", "2000"})
+	public int numPupae;
+
+	@Param({"false", "true"})
+	public boolean aggregated;
+
+	private BreedingSite site;
+	private final EmergenceBuffer maturePupae = new EmergenceBuffer();
+
+	@Setup
+	public void fill()
+	{
+		RandomSource random = new RandomSource(42);
+		site = new BreedingSite(new Position(300, 300), random.split(), aggregated);
+		for(int i = 0; i < numPupae; i++)
+		{
+			site.add(new Pupa(Genotype.ff, site.getLocation(), true, random));
+		}
+	}
+
+	@Benchmark
+	public BreedingSite copy()
+	{
+		return new BreedingSite(site, site.getRandom().copy());
+	}
+
+	@Benchmark
+	public int updateAndGetMaturePupae()
+	{
+		BreedingSite b = new BreedingSite(site, site.getRandom().copy());
+		b.update();
+		maturePupae.clear();
+		b.getMaturePupae(maturePupae);
+		return maturePupae.getTotal();
+	}
+}
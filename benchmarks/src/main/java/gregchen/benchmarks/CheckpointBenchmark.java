@@ -0,0 +1,112 @@
+/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen.benchmarks;
+
+import gregchen.Checkpoint;
+import gregchen.SimulationEngine;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Getting a starting state: restoring a binary checkpoint, parsing the same state from
+ * a text save (held in memory, so only the parsing is measured), and forking an engine
+ * already in memory.
+ * @author Greg
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class CheckpointBenchmark
+{
+	@Param({"2000", "50000"})
+	public int initialNumber;
+
+	private SimulationEngine engine;
+	private SimulationEngine target;
+	private File checkpoint;
+	private byte[] mosquitoInfo, breedingSiteInfo;
+
+	@Setup
+	public void save() throws IOException
+	{
+		int side = EngineUpdateBenchmark.getSide(initialNumber);
+		engine = new SimulationEngine(side, side, SimulationEngine.DEFAULT_RADIUS, SimulationEngine.DEFAULT_SPEED,
+				true, initialNumber, 0, 0, 0, 42);
+		engine.run(1);
+		checkpoint = File.createTempFile("checkpoint", ".bin");
+		Checkpoint.write(engine, checkpoint);
+
+		StringWriter mosquitoes = new StringWriter();
+		StringWriter sites = new StringWriter();
+		engine.save(new PrintWriter(mosquitoes), new PrintWriter(sites));
+		mosquitoInfo = mosquitoes.toString().getBytes(StandardCharsets.UTF_8);
+		breedingSiteInfo = sites.toString().getBytes(StandardCharsets.UTF_8);
+		target = new SimulationEngine(side, side, SimulationEngine.DEFAULT_RADIUS, SimulationEngine.DEFAULT_SPEED,
+				true, 0, 0, 0, 0, 42);
+	}
+
+	@TearDown
+	public void delete()
+	{
+		checkpoint.delete();
+	}
+
+	@Benchmark
+	public SimulationEngine readCheckpoint() throws IOException
+	{
+		return Checkpoint.read(checkpoint);
+	}
+
+	@Benchmark
+	public SimulationEngine loadTextSave()
+	{
+		target.load(new ByteArrayInputStream(breedingSiteInfo), new ByteArrayInputStream(mosquitoInfo));
+		return target;
+	}
+
+	@Benchmark
+	public SimulationEngine fork()
+	{
+		return engine.fork();
+	}
+}
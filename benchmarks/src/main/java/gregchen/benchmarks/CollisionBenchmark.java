@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen.benchmarks;
+
+import gregchen.Actor;
+import gregchen.CollisionGrid;
+import gregchen.Gender;
+import gregchen.Genotype;
+import gregchen.Mosquito;
+import gregchen.MosquitoPopulation;
+import gregchen.Position;
+import gregchen.RandomSource;
+import gregchen.SimulationEngine;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Finding touching pairs: Actor.getCollidingActors over Mosquito objects, and the
+ * grid search over a MosquitoPopulation's arrays that the engine uses every update.
+ * @author Greg
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class CollisionBenchmark
+{
+	@Param({"1000", "10000"})
+	public int numMosquitoes;
+
+	private int side;
+	private ArrayList<Actor> actors;
+	private MosquitoPopulation population;
+	private CollisionGrid grid;
+
+	@Setup
+	public void populate()
+	{
+		side = EngineUpdateBenchmark.getSide(numMosquitoes);
+		RandomSource random = new RandomSource(42);
+		actors = new ArrayList<Actor>(numMosquitoes);
+		population = new MosquitoPopulation(SimulationEngine.DEFAULT_RADIUS, numMosquitoes);
+		for(int i = 0; i < numMosquitoes; i++)
+		{
+			Position birthLocation = Position.getRandomPosition(side, side, random);
+			Gender gender = random.nextBoolean() ? Gender.FEMALE : Gender.MALE;
+			Mosquito m = new Mosquito(SimulationEngine.DEFAULT_RADIUS, birthLocation, SimulationEngine.DEFAULT_SPEED,
+					gender, Genotype.ff, random);
+			actors.add(m);
+			population.add(m);
+		}
+		grid = new CollisionGrid(SimulationEngine.DEFAULT_RADIUS, side, side);
+	}
+
+	@Benchmark
+	public ArrayList<Actor[]> getCollidingActors()
+	{
+		return Actor.getCollidingActors(actors, side, side);
+	}
+
+	@Benchmark
+	public int findCollisions()
+	{
+		return population.findCollisions(grid);
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen.benchmarks;
+
+import gregchen.SimulationEngine;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One whole update of the engine (what Simulation.update drives every frame) at several
+ * population sizes. The area grows with the population so the density, and therefore the
+ * number of matings and eggs, stays that of the default 1000 mosquitoes in 600x600.
+ * Every iteration starts from a fork of the same burnt-in state, so iterations measure
+ * the same stretch of simulated time.
+ * @author Greg
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class EngineUpdateBenchmark
+{
+	//1000 would load the text save instead of a random population
+	@Param({"2000", "10000", "50000"})
+	public int initialNumber;
+
+	@Param({"false", "true"})
+	public boolean aggregated;
+
+	@Param({"1"})
+	public int threads;
+
+	private SimulationEngine burntIn;
+	private SimulationEngine engine;
+
+	@Setup(Level.Trial)
+	public void burnIn()
+	{
+		SimulationEngine.AGGREGATE_AQUATIC_STAGE = aggregated;
+		int side = getSide(initialNumber);
+		burntIn = new SimulationEngine(side, side, SimulationEngine.DEFAULT_RADIUS, SimulationEngine.DEFAULT_SPEED,
+				true, initialNumber, 0, 0, 0, 42);
+		burntIn.run(5);
+	}
+
+	@Setup(Level.Iteration)
+	public void fork()
+	{
+		engine = burntIn.fork();
+		engine.setThreads(threads);
+	}
+
+	@Benchmark
+	public int update()
+	{
+		engine.update();
+		return engine.getPopulation().size();
+	}
+
+	/**
+	 * @return The side of a square area with the default density for a population
+	 */
+	static int getSide(int initialNumber)
+	{
+		return (int)Math.round(600 * Math.sqrt(initialNumber / 1000.0));
+	}
+}
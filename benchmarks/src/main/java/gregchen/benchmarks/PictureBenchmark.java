@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen.benchmarks;
+
+import gregchen.Mosquito;
+import gregchen.Picture;
+
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tinting a sprite sheet. Picture caches its tints, so cached asks for the same colour
+ * every time, while uncached cycles through more colours than the cache holds and so
+ * always computes the tint.
+ * @author Greg
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PictureBenchmark
+{
+	private static final int NUM_COLORS = 4 * Picture.MAX_CACHED_IMAGES;
+
+	private Picture picture;
+	private final Color[] colors = new Color[NUM_COLORS];
+	private int next = 0;
+
+	@Setup
+	public void load()
+	{
+		picture = new Picture(Mosquito.DOT_CIRCLE_FILE_LOCATION);
+		for(int i = 0; i < NUM_COLORS; i++)
+		{
+			colors[i] = Color.getHSBColor(i / (float)NUM_COLORS, 1, 1);
+		}
+	}
+
+	@Benchmark
+	public Picture getTintedCached()
+	{
+		return picture.getTinted(Color.RED);
+	}
+
+	@Benchmark
+	public Picture getTintedUncached()
+	{
+		next = (next + 1) % NUM_COLORS;
+		return picture.getTinted(colors[next]);
+	}
+}
@@ -22,8 +22,7 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Insets;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 /**
  * 
  * A class representing a generic circular actor in the simulation.
@@ -36,10 +35,9 @@ import java.util.Random;
  */
 public class Actor 
 {
-	private static int tagIndex = 0;
+	private static final AtomicInteger tagIndex = new AtomicInteger(); //shared by concurrently running simulations
 	public final static String CIRCLE_FILE_LOCATION = "/images/Circles.png";
 	public static final double DEFAULT_SPEED = 5;
-	private Random random = new Random();
 	private Position location;
 	private double direction;
 	private double speed = 5;
@@ -47,7 +45,9 @@ public class Actor
 	private int tag;
 	private Color color;
 	private boolean isAlive = true;
-	private SpriteSheet sprites;
+	private String spriteFile = CIRCLE_FILE_LOCATION;
+	private SpriteSheet sprites; //shared, fetched on the first draw so headless runs never load images
+	private byte animationPhase;
 	private double age = 0; //Increments every 30 frames.
 	private Position prevDrawPosition;
 	private double boundRadius = 30;
@@ -59,34 +59,34 @@ public class Actor
 	 * @param birthLocation Initial location of the actor
 	 * @param speed Number of pixel distances to move per update
 	 * @param color Color to display
+	 * @param random The simulation's random number stream
 	 */
-	public Actor(double radius, Position birthLocation, double speed, Color color)
+	public Actor(double radius, Position birthLocation, double speed, Color color, RandomSource random)
 	{
 		this.radius = radius;
 		this.birthLocation = birthLocation;
-		Random random = new Random();
 		double theta = 2 * Math.PI * random.nextDouble();
 		double r = 30 * random.nextDouble();
 		this.location = new Position(birthLocation.x + r * Math.cos(theta), birthLocation.y + r * Math.sin(theta));
-		sprites = new SpriteSheet(CIRCLE_FILE_LOCATION, radius);
 		this.setColor(color); 
 		this.speed = speed;
-		randomizeDirection();
-		tag = tagIndex;
-		tagIndex++;
+		randomizeDirection(random);
+		tag = tagIndex.getAndIncrement();
+		animationPhase = SpriteSheet.getInitialPhase(tag);
 	}
 	/**
 	 * Default constructor for the object (rarely used)
 	 */
 	public Actor()
 	{
-		tag = tagIndex;
-		tagIndex++;
+		tag = tagIndex.getAndIncrement();
+		animationPhase = SpriteSheet.getInitialPhase(tag);
 	}
 	/**
 	 * Sets a random direction
+	 * @param random The simulation's random number stream
 	 */
-	private void randomizeDirection()
+	private void randomizeDirection(RandomSource random)
 	{
 		setDirection(2*Math.PI * random.nextDouble());
 	}
@@ -227,15 +227,16 @@ public class Actor
 		if(!newColor.equals(color))
 		{
 			color = newColor;
-			sprites.tint(color);
+			sprites = null;
 		}
 	}
 	/**
-	 * @param newSprites The new sprites to set
+	 * @param fileName The sprite picture to draw the actor with, tinted by its colour
 	 */
-	public void setSprites(SpriteSheet newSprites)
+	public void setSpriteFile(String fileName)
 	{
-		sprites = newSprites;
+		spriteFile = fileName;
+		sprites = null;
 	}
 	/**
 	 * @return The current top-left corner to be drawn
@@ -279,6 +280,7 @@ public class Actor
 	public void setRadius(double newRadius)
 	{
 		radius = newRadius;
+		sprites = null;
 	}
 	/**
 	 * @return The speed
@@ -352,8 +354,9 @@ public class Actor
 	 * Bounces if the actor touches/passes the boundary of how far from its birth location it
 	 * is permitted to travel
 	 * @param boundRadius The radius of the max distance from its birth location it can travel
+	 * @param random The simulation's random number stream
 	 */
-	public void bounceWalls(double boundRadius) 
+	public void bounceWalls(double boundRadius, RandomSource random) 
 	{
 		/*
 		if(getLocation().x < birthLocation.x - bounceRadius || getLocation().x > birthLocation.x + bounceRadius)
@@ -374,7 +377,6 @@ public class Actor
 				this.move(1, this.getLocation().getDirectionTo(birthLocation));
 			}
 			double angle = this.getLocation().getDirectionTo(this.birthLocation);
-			Random random = new Random();
 			angle +=  Math.PI/2 - random.nextDouble() * Math.PI;
 			setDirection(angle);
 			
@@ -403,15 +405,14 @@ public class Actor
 	}
 	/**
 	 * Updates the actor based on a 30fps simulation
+	 * @param random The simulation's random number stream
 	 */
-	public void update()
+	public void update(RandomSource random)
 	{
 		this.move();
 		this.age += 1/30d; //each frame increment age by 1/30 of a day
 		this.boundRadius = 33 * age + 30;
-		bounceWalls(boundRadius);
-		this.sprites.update();
-		
+		bounceWalls(boundRadius, random);
 	}
 	/**
 	 * Draws the circle representing the actor
@@ -424,7 +425,11 @@ public class Actor
 		Position drawPosition = new Position(this.getDrawLocation().x + speed* interpolation *Math.cos(this.direction) + insets.left,
 				this.getDrawLocation().y + speed * interpolation * Math.sin(this.direction) + insets.top);
 		
-		sprites.drawCurrentSprite(g, drawPosition);
+		if(sprites == null)
+		{
+			sprites = SpriteSheet.get(spriteFile, color == null ? Color.WHITE : color, radius);
+		}
+		sprites.drawSprite(g, drawPosition, age, animationPhase);
 		prevDrawPosition = drawPosition;
 		//g.drawOval((int)(birthLocation.x - boundRadius) + insets.left, (int)(birthLocation.y - boundRadius) + insets.top, (int)(2*boundRadius), (int)(2*boundRadius));
 	}
@@ -442,106 +447,44 @@ public class Actor
 	{
 		return this.boundRadius;
 	}
-	//returns an array of colliding pairs of actors, where second index of 0 and 1 are used for colliding actors.
 	/**
-	 * Returns a hashmap of the colliding actors using a quadtree
+	 * Returns every pair of touching actors, found with a uniform grid (see CollisionGrid)
 	 * @param actors Actors considered
 	 * @param width Width of the area considered
 	 * @param height Height of the area considered
-	 * @return A hashmap of colliding actors
+	 * @return The colliding pairs, each as a two-element array
 	 */
-	public static HashMap<Actor, Actor> getCollidingActors(ArrayList<Actor> actors, int width, int height)
-	{		
-		HashMap<Actor, Actor> colliders = getCollidingActors(actors, width, height, 0, 0);
-		return colliders;
-	}
-	
-	//recursive helper method
-	private static HashMap<Actor, Actor> getCollidingActors(ArrayList<Actor> actors, double width, double height, double x, double y)
+	public static ArrayList<Actor[]> getCollidingActors(ArrayList<Actor> actors, int width, int height)
 	{
-		//Node is a leaf if there are 2 or less actors, or if height is smaller than my arbitrary limit of 3* radius
-		if(actors.size() <= 5 || height < 3 * actors.get(0).radius)
+		ArrayList<Actor[]> colliders = new ArrayList<Actor[]>();
+		double maxRadius = 0;
+		double[] x = new double[actors.size()];
+		double[] y = new double[actors.size()];
+		for(int i = 0; i < actors.size(); i++)
 		{
-			return getCollidingActors(actors);
+			x[i] = actors.get(i).location.x;
+			y[i] = actors.get(i).location.y;
+			maxRadius = Math.max(maxRadius, actors.get(i).radius);
 		}
-		
-		//I define branch 1, 2, 3, 4 to be the top left, top right, bottom left, bottom right quadrants respectively
-		ArrayList<Actor> branch1Actors = new ArrayList<Actor>();
-		ArrayList<Actor> branch2Actors = new ArrayList<Actor>();
-		ArrayList<Actor> branch3Actors = new ArrayList<Actor>();
-		ArrayList<Actor> branch4Actors = new ArrayList<Actor>();
-		
-		int numActorsInRect = 0;
-		
-		//asign actors to branches
-		for(Actor a:actors)
+		if(maxRadius <= 0)
 		{
-			if(isInRect(a, width/2, height/2, x, y))
-			{
-				branch1Actors.add(a);
-			}
-			if(isInRect(a, width/2, height/2, x + width/2, y))
-			{
-				branch2Actors.add(a);
-			}
-			if(isInRect(a, width/2, height/2, x, y + height/2))
-			{
-				branch3Actors.add(a);
-			}
-			if(isInRect(a, width/2, height/2, x + width/2, y + height/2))
-			{
-				branch4Actors.add(a);
-			}
+			return colliders;
 		}
-		
-		HashMap<Actor, Actor> colliders = new HashMap();
-		colliders.putAll(getCollidingActors(branch1Actors, width/2, height/2, x, y));
-		colliders.putAll(getCollidingActors(branch2Actors, width/2, height/2, x + width/2, y));
-		colliders.putAll(getCollidingActors(branch3Actors, width/2, height/2, x, y + height/2));
-		colliders.putAll(getCollidingActors(branch4Actors, width/2, height/2, x + width/2, y + height/2));
-		
-		return colliders;
-	}
-	
-	private static HashMap<Actor, Actor> getCollidingActors(ArrayList<Actor> actors)
-	{
-		HashMap<Actor, Actor> colliders = new HashMap();
-		for(int i = 0; i < actors.size(); i++)
+		//the grid tests against the largest radius, so check the actual radii afterwards
+		CollisionGrid grid = new CollisionGrid(maxRadius, width, height);
+		int numPairs = grid.findPairs(x, y, actors.size());
+		int[] pairs = grid.getPairs();
+		for(int k = 0; k < 2 * numPairs; k += 2)
 		{
-			for(int j = 0; j < actors.size(); j++)
+			Actor a = actors.get(pairs[k]);
+			Actor b = actors.get(pairs[k + 1]);
+			if(a.isTouching(b))
 			{
-				if(actors.get(i).getTag() > actors.get(j).getTag())
-				{
-					if(actors.get(i).isTouching(actors.get(j)))
-					{
-						colliders.put(actors.get(i), actors.get(j));
-						
-					}
-				}
+				colliders.add(new Actor[]{a, b});
 			}
 		}
 		return colliders;
 	}
-	/**
-	 * Helper method to determine if actor is in a rectangle
-	 * @param a The actor
-	 * @param width Width of the rectangle
-	 * @param height Height of the rectangle
-	 * @param x x location of the rectangle
-	 * @param y y location of the rectangle
-	 * @return True if and only if the actor is inside the rectangle
-	 */
-	private static boolean isInRect(Actor a, double width, double height, double x, double y)
-	{
-		double r = a.getRadius();
-		
-		if(a.getLocation().x > x - r && a.getLocation().x < x + width + r
-				&& a.getLocation().y > y - r && a.getLocation().y < y + height + r)
-		{
-			return true;
-		}
-		return false;
-	}
 	/**
 	 * @return The actor's tag
 	 */
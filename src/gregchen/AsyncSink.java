@@ -0,0 +1,334 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands rows over to another sink on a background writer thread, so a slow disk
+ * never holds up the thread updating the simulation. Rows go through a lock-free
+ * ring buffer with one producer (the caller of write) and one consumer (the writer
+ * thread), which takes every row available at once and writes them as one batch.
+ * <p>
+ * What happens when the writer falls behind and the ring is full is set by the
+ * {@link Backpressure}. The sink passed in is only ever touched by the writer thread.
+ * @author Greg
+ *
+ */
+public class AsyncSink implements OutputSink
+{
+	/**
+	 * What write does when the ring is full
+	 */
+	public enum Backpressure
+	{
+		/** Wait for the writer to make room. Nothing is lost, but the caller can stall. */
+		BLOCK,
+		/** Throw the row away and count it (see getNumDropped). The caller never waits. */
+		DROP,
+		/** Keep the rows in an unbounded overflow queue until there is room. The caller never waits, but memory can grow. */
+		GROW
+	}
+
+	public static final int DEFAULT_CAPACITY = 8192; //rows
+	private static final long IDLE_PARK_NANOS = 1000000;
+	private static final int INTS_PER_ROW = COLUMNS.length - 1;
+
+	private final OutputSink sink;
+	private final Backpressure backpressure;
+	private final int mask;
+	private final double[] days;
+	private final int[] counts; //counts[slot * INTS_PER_ROW + column - 1]
+
+	//head is only written by the producer and tail only by the consumer
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicLong flushRequest = new AtomicLong(-1); //head at the last call to flush
+	private final AtomicLong flushed = new AtomicLong(-1); //rows written and flushed to the sink
+
+	//rows waiting for room in GROW mode, only touched by the producer
+	private double[] overflowDays = new double[0];
+	private int[] overflowCounts = new int[0];
+	private int overflowStart = 0, overflowEnd = 0;
+
+	private final Thread writer;
+	private volatile boolean closed = false;
+	private volatile IOException failure = null;
+	private long numDropped = 0;
+
+	/**
+	 * @param sink The sink to write to on the writer thread
+	 * @param backpressure What to do when the ring is full
+	 */
+	public AsyncSink(OutputSink sink, Backpressure backpressure)
+	{
+		this(sink, backpressure, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param sink The sink to write to on the writer thread
+	 * @param backpressure What to do when the ring is full
+	 * @param capacity The number of rows in the ring, rounded up to a power of two
+	 */
+	public AsyncSink(OutputSink sink, Backpressure backpressure, int capacity)
+	{
+		this.sink = sink;
+		this.backpressure = backpressure;
+		int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+		mask = size - 1;
+		days = new double[size];
+		counts = new int[size * INTS_PER_ROW];
+		writer = new Thread(this::writeLoop, "Output writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@Override
+	public void write(double day, int total, int males, int females, int numFF, int numFf, int numff) throws IOException
+	{
+		checkFailure();
+		if(overflowEnd > overflowStart)
+		{
+			drainOverflow();
+		}
+		if(overflowEnd == overflowStart && offer(day, total, males, females, numFF, numFf, numff))
+		{
+			return;
+		}
+		switch(backpressure)
+		{
+			case BLOCK:
+				while(!offer(day, total, males, females, numFF, numFf, numff))
+				{
+					checkFailure();
+					LockSupport.unpark(writer);
+					Thread.yield();
+				}
+				break;
+			case DROP:
+				numDropped++;
+				break;
+			case GROW:
+				addOverflow(day, total, males, females, numFF, numFf, numff);
+				break;
+		}
+	}
+
+	//puts a row in the ring if there is room
+	private boolean offer(double day, int total, int males, int females, int numFF, int numFf, int numff)
+	{
+		long h = head.get();
+		if(h - tail.get() > mask)
+		{
+			return false;
+		}
+		int slot = (int)h & mask;
+		days[slot] = day;
+		int c = slot * INTS_PER_ROW;
+		counts[c] = total;
+		counts[c + 1] = males;
+		counts[c + 2] = females;
+		counts[c + 3] = numFF;
+		counts[c + 4] = numFf;
+		counts[c + 5] = numff;
+		head.lazySet(h + 1); //publishes the row to the writer
+		return true;
+	}
+
+	private void addOverflow(double day, int total, int males, int females, int numFF, int numFf, int numff)
+	{
+		if(overflowEnd == overflowDays.length)
+		{
+			//slide the queue down, and double it if that leaves it more than half full
+			int used = overflowEnd - overflowStart;
+			int capacity = Math.max(16, used * 2 > overflowDays.length ? overflowDays.length * 2 : overflowDays.length);
+			double[] newDays = new double[capacity];
+			int[] newCounts = new int[capacity * INTS_PER_ROW];
+			System.arraycopy(overflowDays, overflowStart, newDays, 0, used);
+			System.arraycopy(overflowCounts, overflowStart * INTS_PER_ROW, newCounts, 0, used * INTS_PER_ROW);
+			overflowDays = newDays;
+			overflowCounts = newCounts;
+			overflowStart = 0;
+			overflowEnd = used;
+		}
+		overflowDays[overflowEnd] = day;
+		int c = overflowEnd * INTS_PER_ROW;
+		overflowCounts[c] = total;
+		overflowCounts[c + 1] = males;
+		overflowCounts[c + 2] = females;
+		overflowCounts[c + 3] = numFF;
+		overflowCounts[c + 4] = numFf;
+		overflowCounts[c + 5] = numff;
+		overflowEnd++;
+	}
+
+	//moves as many overflow rows into the ring as fit, oldest first
+	private void drainOverflow()
+	{
+		while(overflowEnd > overflowStart)
+		{
+			int c = overflowStart * INTS_PER_ROW;
+			if(!offer(overflowDays[overflowStart], overflowCounts[c], overflowCounts[c + 1], overflowCounts[c + 2],
+					overflowCounts[c + 3], overflowCounts[c + 4], overflowCounts[c + 5]))
+			{
+				return;
+			}
+			overflowStart++;
+		}
+		overflowStart = overflowEnd = 0;
+	}
+
+	private void writeLoop()
+	{
+		try
+		{
+			while(true)
+			{
+				long t = tail.get();
+				long h = head.get();
+				if(h > t)
+				{
+					//everything published so far goes out as one batch
+					for(long i = t; i < h; i++)
+					{
+						int slot = (int)i & mask;
+						int c = slot * INTS_PER_ROW;
+						sink.write(days[slot], counts[c], counts[c + 1], counts[c + 2], counts[c + 3], counts[c + 4], counts[c + 5]);
+					}
+					tail.lazySet(h); //frees the slots for the producer
+					continue;
+				}
+				long request = flushRequest.get();
+				if(request > flushed.get() && t >= request)
+				{
+					sink.flush();
+					flushed.set(t);
+				}
+				else if(closed && head.get() == t)
+				{
+					break;
+				}
+				else
+				{
+					LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+				}
+			}
+		} catch (IOException e) {
+			failure = e;
+		} finally {
+			try
+			{
+				sink.close();
+			} catch (IOException e) {
+				if(failure == null)
+				{
+					failure = e;
+				}
+			}
+		}
+	}
+
+	private void checkFailure() throws IOException
+	{
+		IOException e = failure;
+		if(e != null)
+		{
+			throw new IOException("Output writer failed", e);
+		}
+	}
+
+	/**
+	 * Waits until every row written so far, including any in the overflow queue, has been
+	 * written and flushed by the underlying sink
+	 */
+	@Override
+	public void flush() throws IOException
+	{
+		drainAll();
+		long target = head.get();
+		flushRequest.set(target);
+		LockSupport.unpark(writer);
+		while(flushed.get() < target && writer.isAlive())
+		{
+			LockSupport.parkNanos(IDLE_PARK_NANOS);
+		}
+		checkFailure();
+	}
+
+	//pushes the whole overflow queue into the ring, waiting for room
+	private void drainAll() throws IOException
+	{
+		while(overflowEnd > overflowStart)
+		{
+			drainOverflow();
+			if(overflowEnd > overflowStart)
+			{
+				checkFailure();
+				if(!writer.isAlive())
+				{
+					return;
+				}
+				LockSupport.unpark(writer);
+				Thread.yield();
+			}
+		}
+	}
+
+	/**
+	 * Writes out every remaining row, closes the underlying sink and stops the writer thread
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if(closed)
+		{
+			return;
+		}
+		drainAll();
+		closed = true;
+		LockSupport.unpark(writer);
+		try
+		{
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while closing the output writer", e);
+		}
+		checkFailure();
+	}
+
+	/**
+	 * @return The number of rows thrown away in DROP mode
+	 */
+	public long getNumDropped()
+	{
+		return numDropped;
+	}
+
+	/**
+	 * @return The number of rows waiting in the overflow queue in GROW mode
+	 */
+	public int getNumOverflowing()
+	{
+		return overflowEnd - overflowStart;
+	}
+}
@@ -18,15 +18,28 @@
 
 
 package gregchen;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Scanner;
 
+import gregchen.SimulationEvents.CullEvent;
+
 /**
  * Class that describes a 'breeding site', which (for Aedes aegypti) is almost
  * exclusively a human container (e.g. a used car tire) that holds standing water.
  * The BreedingSite is displayed as a black circle on the simulation and is
  * responsible for storing and killing pupae.
+ * <p>
+ * A pupa's larval time is drawn when it is laid, so the update it emerges in is known
+ * from then on, and so are the updates its age reaches the LATE and FINAL stages in. Its
+ * density-independent death is drawn at the same time, as the site update it happens in
+ * (see RandomSource.nextGeometric). Each pupa waits on a TimingWheel for the next of
+ * those events, and an update only looks at the pupae due in it and at the FINAL stage
+ * pupae the cull chooses from, rather than ageing and checking every one. Ages are worked
+ * out when they are needed (see Pupa.getAge(long)), and the dead and emerged are only
+ * swept out of the list of pupae once they make up half of it.
  * @author Greg
  *
  */
@@ -39,38 +52,231 @@ public class BreedingSite
 	private Position location;
 	//private final int CC_EARLY = 143; //Focks & Sackett
 	//private final int CC_LATE = 94; //Focks & Sackett
-	private final int CC_FINAL = 25;//17; //Focks & Sackett
+	public static final int CC_FINAL = 25;//17; //Focks & Sackett
+	private static final int EVENT_HORIZON = 16 * SimulationEngine.UPDATES_PER_DAY;
+	private static final int MIN_SWEEP = 64;
+	private static final Comparator<Pupa> BY_SEQUENCE = Comparator.comparingLong(Pupa::getSequence);
 	
 	private final int FLASH_DURATION = 5;
-	private ArrayList<Pupa> pupae = new ArrayList<Pupa>();
+	private ArrayList<Pupa> pupae = new ArrayList<Pupa>(); //in the order added, including the dead and emerged until swept out
+	private int numPupae = 0; //alive and not emerged
+	private long nextSequence = 0;
+	private ArrayList<Pupa> finals = new ArrayList<Pupa>(); //FINAL stage pupae, in the order added
+	private final ArrayList<Pupa> culled = new ArrayList<Pupa>(); //the finals the cull chooses from, reused every update
+	private final TimingWheel<Pupa> events = new TimingWheel<Pupa>(EVENT_HORIZON); //pupae, in the update of their next event
+	private final ArrayList<Pupa> due = new ArrayList<Pupa>(); //reused every update
+	private final ArrayList<Pupa> emerging = new ArrayList<Pupa>(); //reused every update
+	private final ArrayList<Pupa> mature = new ArrayList<Pupa>(); //emerged this update, until getMaturePupae
+	private PupaCohorts cohorts; //null unless the aquatic stage is aggregated
+	private int[] emerged;
 	private boolean flashing = false;
 	private int flashCount = 0;
+	private RandomSource random;
 	
 	/**
 	 * Main constructor
 	 * @param p Poition of the site
+	 * @param random The site's own random number stream, split off the simulation's
+	 */
+	public BreedingSite(Position p, RandomSource random)
+	{
+		this(p, random, false);
+	}
+	/**
+	 * Constructor for a site which may keep its pupae as counts rather than objects
+	 * @param p Poition of the site
+	 * @param random The site's own random number stream, split off the simulation's
+	 * @param aggregated Whether to keep the pupae in a PupaCohorts
 	 */
-	public BreedingSite(Position p)
+	public BreedingSite(Position p, RandomSource random, boolean aggregated)
 	{
 		location = p;
+		this.random = random;
+		if(aggregated)
+		{
+			setAggregated();
+		}
+	}
+	/**
+	 * Constructor for a breeding site given save data
+	 * @param info The save data
+	 * @param random The site's own random number stream, split off the simulation's
+	 */
+	public BreedingSite(String info, RandomSource random)
+	{
+		this(info, random, false);
 	}
 	/**
 	 * Constructor for a breeding site given save data
 	 * @param info The save data
+	 * @param random The site's own random number stream, split off the simulation's
+	 * @param aggregated Whether to keep the pupae in a PupaCohorts
 	 */
-	public BreedingSite(String info)
+	public BreedingSite(String info, RandomSource random, boolean aggregated)
 	{
+		this.random = random;
+		if(aggregated)
+		{
+			setAggregated();
+		}
 		Scanner scanner = new Scanner(info);
 		this.location = new Position(scanner.nextDouble(), scanner.nextDouble());
 		int n = scanner.nextInt();
 	}
+	/**
+	 * Copy constructor, e.g. for forking a simulation. The pupae are copied, so the two
+	 * sites evolve independently from here on.
+	 * @param other The site to copy
+	 * @param random The copy's random number stream
+	 */
+	public BreedingSite(BreedingSite other, RandomSource random)
+	{
+		this(other, random, false);
+	}
+	/**
+	 * Copy constructor, e.g. for forking a simulation. The pupae are copied, so the two
+	 * sites evolve independently from here on.
+	 * @param other The site to copy
+	 * @param random The copy's random number stream
+	 * @param redrawDeaths Whether the pupae's deaths are drawn afresh from random, as for
+	 * pupae loaded from a text save, rather than copied
+	 */
+	public BreedingSite(BreedingSite other, RandomSource random, boolean redrawDeaths)
+	{
+		this.location = new Position(other.location.x, other.location.y);
+		this.random = random;
+		this.flashing = other.flashing;
+		this.flashCount = other.flashCount;
+		if(other.cohorts != null)
+		{
+			cohorts = new PupaCohorts(other.cohorts);
+			emerged = new int[PupaCohorts.getNumGroups()];
+		}
+		ArrayList<Pupa> otherPupae = other.getLivePupae();
+		pupae.ensureCapacity(otherPupae.size());
+		long otherNow = other.events.getNow();
+		for(Pupa p: otherPupae)
+		{
+			//pupae laid here share the site's Position
+			Position birthLocation = p.getBirthLocation() == other.location ? location
+					: new Position(p.getBirthLocation().x, p.getBirthLocation().y);
+			Pupa copy = new Pupa(p, birthLocation);
+			copy.setAge(p.getAge(otherNow), events.getNow());
+			copy.setDeathUpdate(redrawDeaths ? -1 : p.getDeathUpdate() - otherNow + events.getNow());
+			add(copy);
+		}
+	}
 	/**
 	 * Add a pupa to the breeding site
 	 * @param pupa the pupa to add
 	 */
 	public void add(Pupa pupa)
 	{
-		pupae.add(pupa);
+		if(cohorts != null)
+		{
+			cohorts.add(pupa);
+		}
+		else
+		{
+			long now = events.getNow();
+			double age = pupa.getAge();
+			pupa.setAge(age, now);
+			if(pupa.getDeathUpdate() < 0)
+			{
+				drawDeathUpdate(pupa, random);
+			}
+			pupa.setSequence(nextSequence++);
+			//the age is first compared after the next update has aged it
+			pupa.setEmergenceUpdate(now + Math.max(1, UpdateClock.updatesUntilAbove(age, pupa.getLarvalTime())));
+			setStage(pupa, age, now);
+			pupae.add(pupa);
+			numPupae++;
+			schedule(pupa);
+		}
+	}
+	//like its emergence, the first update it could die in is the next one
+	private void drawDeathUpdate(Pupa pupa, RandomSource random)
+	{
+		pupa.setDeathUpdate(events.getNow() + random.nextGeometric(DENSITY_INDEPENDENT_MORTALITY_PROB));
+	}
+	/**
+	 * Sets the stage a pupa is in at an age, and the update it moves on to the next stage in.
+	 * A FINAL stage pupa joins the finals, in the order the pupae were added.
+	 */
+	private void setStage(Pupa pupa, double age, long update)
+	{
+		Pupa.Stage stage = Pupa.getStageAtAge(age);
+		pupa.setStage(stage);
+		if(stage == Pupa.Stage.FINAL)
+		{
+			int index = Collections.binarySearch(finals, pupa, BY_SEQUENCE);
+			finals.add(-index - 1, pupa);
+		}
+		else
+		{
+			double next = stage == Pupa.Stage.EARLY ? Pupa.DAYS_TO_STAGE_LATE : Pupa.DAYS_TO_STAGE_FINAL;
+			//the first update in which its age is at least next
+			pupa.setStageUpdate(update + UpdateClock.updatesUntilAbove(age, Math.nextDown(next)));
+		}
+	}
+	//puts a pupa on the wheel for the first of its events still to come
+	private void schedule(Pupa pupa)
+	{
+		long next = Math.min(pupa.getEmergenceUpdate(), pupa.getDeathUpdate());
+		if(pupa.getStage() != Pupa.Stage.FINAL)
+		{
+			next = Math.min(next, pupa.getStageUpdate());
+		}
+		events.schedule(next, pupa);
+	}
+	private static boolean isPresent(Pupa pupa)
+	{
+		return pupa.isAlive() && !pupa.hasEmerged();
+	}
+	/**
+	 * @return The pupae neither dead nor emerged, in the order they were added
+	 */
+	private ArrayList<Pupa> getLivePupae()
+	{
+		ArrayList<Pupa> live = new ArrayList<Pupa>(numPupae);
+		for(Pupa p: pupae)
+		{
+			if(isPresent(p))
+			{
+				live.add(p);
+			}
+		}
+		return live;
+	}
+	/**
+	 * Lay a new egg in the breeding site. Its gender is random.
+	 * @param genotype The genotype of the offspring
+	 * @param random The stream of the mosquito laying it
+	 */
+	public void lay(Genotype genotype, RandomSource random)
+	{
+		if(cohorts != null)
+		{
+			cohorts.add(random.nextBoolean() ? Gender.FEMALE : Gender.MALE, genotype, 0);
+		}
+		else
+		{
+			Pupa pupa = new Pupa(genotype, location, random);
+			drawDeathUpdate(pupa, random);
+			add(pupa);
+		}
+	}
+	private void setAggregated()
+	{
+		cohorts = new PupaCohorts();
+		emerged = new int[PupaCohorts.getNumGroups()];
+	}
+	/**
+	 * @return Whether the pupae are kept as counts in a PupaCohorts rather than as objects
+	 */
+	public boolean isAggregated()
+	{
+		return cohorts != null;
 	}
 	/**
 	 * Begin the flash sequence
@@ -89,10 +295,17 @@ public class BreedingSite
 	 */
 	public void killAllPupae()
 	{
+		if(cohorts != null)
+		{
+			cohorts.clear();
+		}
 		for(Pupa p:pupae)
 		{
 			p.kill();
 		}
+		pupae.clear();
+		finals.clear();
+		numPupae = 0;
 	}
 	/**
 	 * Get save data
@@ -100,11 +313,16 @@ public class BreedingSite
 	 */
 	public String getInfo()
 	{
-		String toReturn = "";
-		toReturn += location.x + " " + location.y + " ";
-		toReturn += pupae.size() + "\n";
+		StringBuilder builder = new StringBuilder(64 * (getNumPupae() + 1));
+		builder.append(location.x).append(' ').append(location.y).append(' ');
+		builder.append(getNumPupae()).append('\n');
+		if(cohorts != null)
+		{
+			cohorts.appendInfo(builder, location, random);
+		}
 		
-		for(Pupa p:pupae)
+		long now = events.getNow();
+		for(Pupa p:getLivePupae())
 		{
 			int genderNumber = 0;
 			int genotypeNumber = 0;
@@ -120,13 +338,135 @@ public class BreedingSite
 			{
 				genotypeNumber = 2;
 			}
-			toReturn += p.getAge() + " " + p.getLarvalTime() +" " + genderNumber + " " + genotypeNumber + " " + p.getBirthLocation().x + " "
-					+ p.getBirthLocation().y +  "\n";
+			builder.append(p.getAge(now)).append(' ').append(p.getLarvalTime()).append(' ').append(genderNumber).append(' ')
+					.append(genotypeNumber).append(' ').append(p.getBirthLocation().x).append(' ')
+					.append(p.getBirthLocation().y).append('\n');
 		}
 		
-		return toReturn;
+		return builder.toString();
+	}
+	
+	/**
+	 * @return The number of bytes writeCheckpoint will write
+	 */
+	public long getCheckpointSize()
+	{
+		long size = 2 * 8 + 1 + 4 + 2 * 8 + 1;
+		if(cohorts != null)
+		{
+			return size + cohorts.getCheckpointSize();
+		}
+		return size + 4 + numPupae * (5 * 8 + 1L);
+	}
+	
+	/**
+	 * Writes the site, its random number stream and its pupae into a checkpoint (see Checkpoint)
+	 * @param buffer Where to write
+	 */
+	public void writeCheckpoint(ByteBuffer buffer)
+	{
+		buffer.putDouble(location.x);
+		buffer.putDouble(location.y);
+		buffer.put((byte)(flashing ? 1 : 0));
+		buffer.putInt(flashCount);
+		buffer.putLong(random.getState());
+		buffer.putLong(random.getGamma());
+		buffer.put((byte)(cohorts != null ? 1 : 0));
+		if(cohorts != null)
+		{
+			cohorts.writeCheckpoint(buffer);
+			return;
+		}
+		//the pupae are written a field at a time, like the adults
+		ArrayList<Pupa> live = getLivePupae();
+		long now = events.getNow();
+		buffer.putInt(live.size());
+		for(Pupa p: live)
+		{
+			buffer.putDouble(p.getAge(now));
+		}
+		for(Pupa p: live)
+		{
+			buffer.putDouble(p.getLarvalTime());
+		}
+		for(Pupa p: live)
+		{
+			buffer.putDouble(p.getBirthLocation().x);
+		}
+		for(Pupa p: live)
+		{
+			buffer.putDouble(p.getBirthLocation().y);
+		}
+		for(Pupa p: live)
+		{
+			buffer.putLong(p.getDeathUpdate() - now);
+		}
+		for(Pupa p: live)
+		{
+			buffer.put((byte)((p.getGender() == Gender.FEMALE ? 1 : 0) | p.getGenotype().ordinal() << 1));
+		}
+	}
+	
+	/**
+	 * Constructor for a breeding site stored in a checkpoint by writeCheckpoint. Whether
+	 * its pupae are aggregated is also taken from the checkpoint.
+	 * @param buffer Where to read from
+	 */
+	public BreedingSite(ByteBuffer buffer)
+	{
+		location = new Position(buffer.getDouble(), buffer.getDouble());
+		flashing = buffer.get() != 0;
+		flashCount = buffer.getInt();
+		random = RandomSource.fromState(buffer.getLong(), buffer.getLong());
+		if(buffer.get() != 0)
+		{
+			setAggregated();
+			cohorts.readCheckpoint(buffer);
+			return;
+		}
+		int n = buffer.getInt();
+		if(n < 0 || n > buffer.remaining())
+		{
+			throw new IllegalStateException("Bad number of pupae " + n);
+		}
+		double[] ages = Checkpoint.getDoubles(buffer, n);
+		double[] larvalTimes = Checkpoint.getDoubles(buffer, n);
+		double[] birthX = Checkpoint.getDoubles(buffer, n);
+		double[] birthY = Checkpoint.getDoubles(buffer, n);
+		long[] updatesLeft = new long[n];
+		for(int i = 0; i < n; i++)
+		{
+			updatesLeft[i] = buffer.getLong();
+		}
+		Genotype[] genotypes = Genotype.values();
+		pupae.ensureCapacity(n);
+		for(int i = 0; i < n; i++)
+		{
+			int traits = buffer.get();
+			//pupae born here share the site's Position, as they do when laid
+			Position birthLocation = birthX[i] == location.x && birthY[i] == location.y ? location : new Position(birthX[i], birthY[i]);
+			Pupa pupa = new Pupa(genotypes[traits >> 1 & 3], (traits & 1) != 0 ? Gender.FEMALE : Gender.MALE, birthLocation,
+					ages[i], larvalTimes[i]);
+			pupa.setDeathUpdate(events.getNow() + updatesLeft[i]);
+			add(pupa);
+		}
 	}
 	
+	//records a cull in a flight recording, if it killed anything and the recording wants it
+	private void commitCull(CullEvent event, int killed)
+	{
+		event.end();
+		if(killed > 0 && event.shouldCommit())
+		{
+			event.x = location.x;
+			event.y = location.y;
+			event.killed = killed;
+			event.capacity = CC_FINAL;
+			event.aquatic = getNumPupae();
+			event.commit();
+		}
+	}
+
 	/**
 	 * Update the breeding site assuming 30fps. Kill pupae if necessary
 	 */
@@ -140,133 +480,115 @@ public class BreedingSite
 				flashing = false;
 			}
 		}
-		Random random = new Random();
-		//update pupae
-		for(int i = 0; i < pupae.size(); i++)
+		CullEvent cullEvent = new CullEvent();
+		if(cohorts != null)
 		{
-			//density-independent mortality
-			if(random.nextDouble() < DENSITY_INDEPENDENT_MORTALITY_PROB)
+			cohorts.update(DENSITY_INDEPENDENT_MORTALITY_PROB, random);
+			cullEvent.begin();
+			commitCull(cullEvent, cohorts.cull(CC_FINAL, random));
+			return;
+		}
+		long now = events.getNow() + 1;
+		due.clear();
+		events.advance(due);
+		emerging.clear();
+		for(int i = 0; i < due.size(); i++)
+		{
+			Pupa p = due.get(i);
+			if(!p.isAlive())
 			{
-				pupae.get(i).kill();
+				continue; //culled or killed since it was scheduled
 			}
-			pupae.get(i).update();
-			
-			if(!pupae.get(i).isAlive())
+			//density-independent mortality
+			if(p.getDeathUpdate() == now)
 			{
-				pupae.remove(i);
-				i--;
+				p.kill();
+				numPupae--;
+				continue;
 			}
-		}
-		//Density-dependent deaths
-			
-		ArrayList<Pupa> earlies = new ArrayList<Pupa>();
-		ArrayList<Pupa> lates = new ArrayList<Pupa>();
-		ArrayList<Pupa> finals = new ArrayList<Pupa>();
-
-		for(Pupa p:pupae)
-		{
-			if(p.getStage() == Pupa.Stage.EARLY)
+			if(p.getStage() != Pupa.Stage.FINAL && p.getStageUpdate() == now)
 			{
-				earlies.add(p);
+				setStage(p, p.getAge(now), now);
 			}
-			else if(p.getStage() == Pupa.Stage.LATE)
+			if(p.getEmergenceUpdate() == now)
 			{
-				lates.add(p);
+				emerging.add(p);
 			}
-			if(p.getStage() == Pupa.Stage.FINAL)
+			else
 			{
-				finals.add(p);
+				schedule(p);
 			}
 		}
-		//System.out.println(earlies.size());
-		
-		/*
-		while(earlies.size() > CC_EARLY)
-		{
-			int index = random.nextInt(earlies.size());
-			earlies.get(index).kill();
-			earlies.remove(index);
-		}
-		while(lates.size() > CC_LATE)
-		{
-			int index = random.nextInt(lates.size());
-			lates.get(index).kill();
-			lates.remove(index);
-		}
-		*/
-		
-
-		
-		while(finals.size() > CC_FINAL)
-		{
-			int index = random.nextInt(finals.size());
-			finals.get(index).kill();
-			finals.remove(index);
-		}
 
-		//System.out.println(finals.size());
-		/*//old code. 
-		for(Pupa p:pupae)
-		{
-			//p.setDensityDependentMortalityProb(SUB_CC_MORTALITY_PROB);
-		}
-		if(earlies.size() > CC_EARLY)
+		//Density-dependent deaths, among the FINAL stage pupae in the order they were added
+		cullEvent.begin();
+		Compaction.compact(finals, BreedingSite::isPresent, null);
+		int killed = 0;
+		if(finals.size() > CC_FINAL)
 		{
-			double prob = getMortalityProb(Pupa.DAYS_TO_STAGE_LATE * 30, (double)CC_EARLY / earlies.size());
-			for(Pupa p:earlies)
+			culled.clear();
+			culled.addAll(finals);
+			while(culled.size() > CC_FINAL)
 			{
-				p.setDensityDependentMortalityProb(prob);
+				int index = random.nextInt(culled.size());
+				int last = culled.size() - 1;
+				culled.get(index).kill();
+				culled.set(index, culled.get(last));
+				culled.remove(last);
+				killed++;
 			}
+			numPupae -= killed;
+			Compaction.compact(finals, Pupa::isAlive, null);
 		}
-		if(lates.size() > CC_LATE)
+		commitCull(cullEvent, killed);
+
+		//the wheel hands them over in the order they were scheduled, which is not the order they were added
+		emerging.sort(BY_SEQUENCE);
+		for(int i = 0; i < emerging.size(); i++)
 		{
-			double prob = getMortalityProb((Pupa.DAYS_TO_STAGE_FINAL - Pupa.DAYS_TO_STAGE_LATE) * 30,
-					(double)CC_LATE / lates.size());
-			for(Pupa p:lates)
+			Pupa p = emerging.get(i);
+			if(p.isAlive())
 			{
-				p.setDensityDependentMortalityProb(prob);
+				p.emerge();
+				numPupae--;
+				mature.add(p);
 			}
 		}
-		if(finals.size() > CC_FINAL)
+		if(pupae.size() > 2 * numPupae + MIN_SWEEP)
 		{
-			//System.out.println(finals.size());
-			double prob = getMortalityProb((Pupa.DAYS_TO_ADULTHOOD - Pupa.DAYS_TO_STAGE_FINAL) * 30, 
-					(double)CC_FINAL / finals.size());
-			//System.out.println(prob);
-			for(Pupa p:finals)
-			{
-				p.setDensityDependentMortalityProb(prob);
-			}
+			Compaction.compact(pupae, BreedingSite::isPresent, null);
 		}
-		*/
-	}
-	/**
-	 * Get the density-dependent mortality probability
-	 * @param duration
-	 * @param fractionToSurvive
-	 * @return
-	 */
-	private double getMortalityProb(double duration, double fractionToSurvive)
-	{
-		return 1.0 - Math.pow(fractionToSurvive, 1.0 / duration);
 	}
 	
 	/**
-	 * Get a list of the pupae which are ready to emerge as adults
-	 * @return The mature pupae
+	 * Remove the pupae which are ready to emerge as adults, i.e. those which emerged in the last update.
+	 * Aggregated pupae are handed over as one record per gender and genotype.
+	 * @param emergences The mature pupae are added to the end of this buffer
 	 */
-	public ArrayList<Pupa> getMaturePupae()
+	public void getMaturePupae(EmergenceBuffer emergences)
 	{
-		ArrayList<Pupa> maturePupae = new ArrayList<Pupa>();
-		for(int i = 0; i < pupae.size(); i++)
+		if(cohorts != null)
 		{
-			if(pupae.get(i).getAge() > pupae.get(i).getLarvalTime())
+			cohorts.emerge(emerged, random);
+			for(int g = 0; g < emerged.length; g++)
 			{
-				maturePupae.add(pupae.get(i));
-				pupae.remove(i);
+				emergences.add(location, PupaCohorts.getGender(g), PupaCohorts.getGenotype(g), emerged[g]);
 			}
+			return;
+		}
+		for(int i = 0; i < mature.size(); i++)
+		{
+			emergences.add(mature.get(i));
 		}
-		return maturePupae;
+		mature.clear();
+	}
+	
+	/**
+	 * @return The site's random number stream
+	 */
+	public RandomSource getRandom()
+	{
+		return random;
 	}
 	
 	/**
@@ -284,6 +606,10 @@ public class BreedingSite
 	 */
 	public int getNumPupae()
 	{
-		return pupae.size();
+		if(cohorts != null)
+		{
+			return cohorts.getTotal();
+		}
+		return numPupae;
 	}
 }
@@ -0,0 +1,179 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A static grid over the breeding site locations, used to find the site a female
+ * deposits her eggs in. The cells are as wide as the search radius
+ * (MAX_DISTANCE_TO_BREEDING_SITE), so a query only looks at the 3x3 block of cells
+ * around the female, however many sites there are. Sites do not move, so the grid
+ * is only rebuilt when sites are added or removed.
+ * @author Greg
+ *
+ */
+public class BreedingSiteIndex
+{
+	private final double cellSize;
+	private List<BreedingSite> sites;
+	private boolean dirty = true;
+	private int builtSize = -1;
+
+	private double minX, minY;
+	private int columns, rows;
+	private int[] cellStart = new int[0];
+	private int[] sorted = new int[0];
+	private double[] siteX = new double[0];
+	private double[] siteY = new double[0];
+
+	/**
+	 * @param sites The breeding sites to index. The list is read again whenever the index is rebuilt.
+	 * @param cellSize The width of a grid cell, normally the largest distance that will be searched
+	 */
+	public BreedingSiteIndex(List<BreedingSite> sites, double cellSize)
+	{
+		this.sites = sites;
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * Marks the index to be rebuilt before the next query. Call after adding or removing sites.
+	 */
+	public void invalidate()
+	{
+		dirty = true;
+	}
+
+	/**
+	 * Rebuilds the index now if it is out of date. Queries never modify a built index,
+	 * so after this several threads may query it at once (as long as no sites are added or removed).
+	 */
+	public void ensureBuilt()
+	{
+		if(dirty || builtSize != sites.size())
+		{
+			rebuild();
+		}
+	}
+
+	private void rebuild()
+	{
+		int n = sites.size();
+		if(siteX.length < n)
+		{
+			siteX = new double[n];
+			siteY = new double[n];
+			sorted = new int[n];
+		}
+		minX = Double.POSITIVE_INFINITY;
+		minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for(int i = 0; i < n; i++)
+		{
+			Position p = sites.get(i).getLocation();
+			siteX[i] = p.x;
+			siteY[i] = p.y;
+			minX = Math.min(minX, p.x);
+			minY = Math.min(minY, p.y);
+			maxX = Math.max(maxX, p.x);
+			maxY = Math.max(maxY, p.y);
+		}
+		if(n == 0)
+		{
+			minX = minY = maxX = maxY = 0;
+		}
+		columns = (int)((maxX - minX) / cellSize) + 1;
+		rows = (int)((maxY - minY) / cellSize) + 1;
+		if(cellStart.length < columns * rows + 1)
+		{
+			cellStart = new int[columns * rows + 1];
+		}
+		else
+		{
+			Arrays.fill(cellStart, 0, columns * rows + 1, 0);
+		}
+		//counting sort of the sites by cell, keeping list order within a cell
+		for(int i = 0; i < n; i++)
+		{
+			cellStart[getCell(siteX[i], siteY[i]) + 1]++;
+		}
+		for(int c = 0; c < columns * rows; c++)
+		{
+			cellStart[c + 1] += cellStart[c];
+		}
+		int[] next = cellStart.clone();
+		for(int i = 0; i < n; i++)
+		{
+			sorted[next[getCell(siteX[i], siteY[i])]++] = i;
+		}
+		builtSize = n;
+		dirty = false;
+	}
+
+	private int getCell(double x, double y)
+	{
+		return (int)((y - minY) / cellSize) * columns + (int)((x - minX) / cellSize);
+	}
+
+	/**
+	 * Finds the nearest site strictly closer than maxDistance. Ties go to the site that comes first in the list.
+	 * @param x x coordinate of the query
+	 * @param y y coordinate of the query
+	 * @param maxDistance The largest distance to search
+	 * @return The nearest site, or null if there is none within maxDistance
+	 */
+	public BreedingSite getNearest(double x, double y, double maxDistance)
+	{
+		ensureBuilt();
+		int reach = (int)Math.ceil(maxDistance / cellSize);
+		int column = (int)Math.floor((x - minX) / cellSize);
+		int row = (int)Math.floor((y - minY) / cellSize);
+		int firstColumn = Math.max(0, column - reach);
+		int lastColumn = Math.min(columns - 1, column + reach);
+		int firstRow = Math.max(0, row - reach);
+		int lastRow = Math.min(rows - 1, row + reach);
+
+		int best = -1;
+		double bestDistance = maxDistance * maxDistance;
+		for(int r = firstRow; r <= lastRow; r++)
+		{
+			for(int c = firstColumn; c <= lastColumn; c++)
+			{
+				int cell = r * columns + c;
+				for(int k = cellStart[cell]; k < cellStart[cell + 1]; k++)
+				{
+					int i = sorted[k];
+					double dx = x - siteX[i];
+					double dy = y - siteY[i];
+					double distance = dx * dx + dy * dy;
+					if(distance < bestDistance || distance == bestDistance && best >= 0 && i < best)
+					{
+						bestDistance = distance;
+						best = i;
+					}
+				}
+			}
+		}
+		return best < 0 ? null : sites.get(best);
+	}
+}
@@ -0,0 +1,201 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cache of burnt-in (equilibrated) starting states, so runs starting from a random
+ * population do not each have to simulate their way to a stable one first. Each state
+ * is stored as a checkpoint (see Checkpoint) named after a SHA-256 hash of every model
+ * constant, the domain, the initial number, the burn-in length and the seed, so changing
+ * any of them simply misses the cache rather than reusing a stale state. Missing entries
+ * are simulated and stored on first use; entries already used in this JVM are kept in
+ * memory. Fork the returned engine rather than updating it, as it is shared.
+ * @author Greg
+ *
+ */
+public class BurnInCache
+{
+	public static final double DEFAULT_BURN_IN_DAYS = 60;
+	private static final String FORMAT = "BurnInCache 1";
+
+	private final File directory;
+	private final double burnInDays;
+	//a burn-in runs for a long time, so it runs outside the map and the others wait on its future
+	private final ConcurrentHashMap<String, CompletableFuture<SimulationEngine>> loaded =
+			new ConcurrentHashMap<String, CompletableFuture<SimulationEngine>>();
+
+	/**
+	 * @param directory Where the checkpoints are kept, created if it does not exist
+	 * @param burnInDays How many days to simulate before a state counts as burnt in
+	 */
+	public BurnInCache(File directory, double burnInDays)
+	{
+		this.directory = directory;
+		this.burnInDays = burnInDays;
+	}
+
+	/**
+	 * Gets the state of a population without releases after the burn-in, simulating and
+	 * storing it if it is not cached yet. Several threads may ask at once; each state is
+	 * only simulated once.
+	 * @param width Width of the simulated area
+	 * @param height Height of the simulated area
+	 * @param radius Radius of the mosquitoes
+	 * @param speed Speed of the mosquitoes
+	 * @param initialNumber The initial number of mosquitoes
+	 * @param seed The seed of the burn-in
+	 * @return The burnt-in engine, to be forked
+	 * @throws IOException If the state could not be read or stored
+	 */
+	public SimulationEngine get(int width, int height, double radius, double speed, int initialNumber, long seed) throws IOException
+	{
+		String key = getKey(width, height, radius, speed, initialNumber, seed);
+		CompletableFuture<SimulationEngine> future = loaded.get(key);
+		if(future == null)
+		{
+			CompletableFuture<SimulationEngine> created = new CompletableFuture<SimulationEngine>();
+			future = loaded.putIfAbsent(key, created);
+			if(future == null)
+			{
+				future = created;
+				try
+				{
+					created.complete(load(key, width, height, radius, speed, initialNumber, seed));
+				} catch (IOException | RuntimeException | Error e) {
+					//a later call tries again rather than getting the same failure
+					loaded.remove(key, created);
+					created.completeExceptionally(e);
+				}
+			}
+		}
+		try
+		{
+			return future.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException)
+			{
+				throw (IOException)cause;
+			}
+			if(cause instanceof RuntimeException)
+			{
+				throw (RuntimeException)cause;
+			}
+			if(cause instanceof Error)
+			{
+				throw (Error)cause;
+			}
+			throw e;
+		}
+	}
+
+	private SimulationEngine load(String key, int width, int height, double radius, double speed, int initialNumber, long seed) throws IOException
+	{
+		File file = new File(directory, key + ".bin");
+		if(file.exists())
+		{
+			try
+			{
+				return Checkpoint.read(file);
+			} catch (IOException e) {
+				System.err.println("Ignoring unreadable burn-in " + file + ": " + e.getMessage());
+			}
+		}
+		//releases are irrelevant until the scenario forks the state
+		SimulationEngine engine = new SimulationEngine(width, height, radius, speed, true, initialNumber, 0, 0, 0, seed);
+		engine.run(burnInDays);
+
+		//write under a temporary name and rename, so other processes never see half a file
+		if(!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IOException("Could not create " + directory);
+		}
+		File temporary = File.createTempFile(key, ".tmp", directory);
+		try
+		{
+			Checkpoint.write(engine, temporary);
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			temporary.delete();
+		}
+		return engine;
+	}
+
+	/**
+	 * @return The name of the cache entry for a burn-in: a hash of everything that affects it
+	 */
+	public String getKey(int width, int height, double radius, double speed, int initialNumber, long seed)
+	{
+		StringBuilder description = new StringBuilder(FORMAT);
+		description.append(";checkpoint=").append(Checkpoint.VERSION)
+				.append(";width=").append(width).append(";height=").append(height)
+				.append(";radius=").append(radius).append(";speed=").append(speed)
+				.append(";initialNumber=").append(initialNumber).append(";burnInDays=").append(burnInDays)
+				.append(";seed=").append(seed)
+				.append(";aggregated=").append(SimulationEngine.AGGREGATE_AQUATIC_STAGE)
+				.append(";sites=").append(SimulationEngine.NUM_BREEDING_SITES).append(";scale=").append(SimulationEngine.SCALE)
+				.append(";updatesPerDay=").append(SimulationEngine.UPDATES_PER_DAY)
+				.append(";emergenceSurvival=").append(SimulationEngine.EMERGENCE_SURVIVAL_PROB)
+				.append(";maxDistanceToSite=").append(SimulationEngine.MAX_DISTANCE_TO_BREEDING_SITE)
+				.append(";matingProb=").append(SimulationEngine.MATING_PROB)
+				.append(";mortality=").append(Mosquito.MORTALITY_PROB)
+				.append(";daysUntilFertileAfterOvipos=").append(Mosquito.DAYS_UNTIL_FERTILE_AFTER_OVIPOS)
+				.append(";maleMatings=").append(Mosquito.NUM_TIMES_MALE_CAN_MATE)
+				.append(";femaleMatings=").append(Mosquito.NUM_TIMES_FEMALE_CAN_MATE)
+				.append(";daysUntilEggDeposit=").append(Mosquito.NUM_DAYS_UNTIL_EGG_DEPOSIT)
+				.append(";eggsPerOvipos=").append(Mosquito.NUM_EGGS_PER_OVIPOS)
+				.append(";maleDaysUntilFertile=").append(Mosquito.MALE_DAYS_UNTIL_FERTILE)
+				.append(";femaleDaysUntilFertile=").append(Mosquito.FEMALE_DAYS_UNTIL_FERTILE)
+				.append(";aquaticMortality=").append(BreedingSite.DENSITY_INDEPENDENT_MORTALITY_PROB)
+				.append(";ccFinal=").append(BreedingSite.CC_FINAL)
+				.append(";daysToAdulthood=").append(Pupa.DAYS_TO_ADULTHOOD)
+				.append(";daysToStageLate=").append(Pupa.DAYS_TO_STAGE_LATE)
+				.append(";daysToStageFinal=").append(Pupa.DAYS_TO_STAGE_FINAL)
+				.append(";larvalTimeSpread=").append(PupaCohorts.LARVAL_TIME_SPREAD);
+		try
+		{
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(description.toString().getBytes(StandardCharsets.UTF_8));
+			StringBuilder key = new StringBuilder();
+			for(byte b: hash)
+			{
+				key.append(Character.forDigit(b >> 4 & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is missing", e);
+		}
+	}
+
+	public double getBurnInDays()
+	{
+		return burnInDays;
+	}
+}
@@ -18,7 +18,6 @@
 
 
 package gregchen;
-import java.util.Random;
 
 /**
  * 
@@ -27,8 +26,6 @@ import java.util.Random;
  */
 public class Calc 
 {
-	static Random random = new Random();
-	
 	/**
 	 * Takes any angle in radians and returns a value between (inclusive) 0 and 2pi
 	 * @param angle in radians
@@ -79,9 +76,10 @@ public class Calc
 	/**
 	 * Makes a random boolean decision given a probability
 	 * @param probability probability between (inclusive) 0 and 1
+	 * @param random The simulation's random number stream
 	 * @return true or false based on this probability
 	 */
-	public static boolean randomOutcome(double probability)
+	public static boolean randomOutcome(double probability, RandomSource random)
 	{
 		if(random.nextDouble() < probability)
 		{
@@ -0,0 +1,204 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes binary checkpoints of a whole simulation: every adult, every
+ * breeding site and its pupae, every random number stream and the day counter, so a
+ * restored engine carries on exactly as the original would have. The file is mapped
+ * into memory and the adults' arrays are copied in and out whole, so even a population
+ * of millions takes milliseconds rather than the seconds spent parsing a text save.
+ * <p>
+ * Layout (little-endian): MAGIC, VERSION, the length of the body as a long, then
+ * the engine's fields, the adults one array at a time (see MosquitoPopulation.writeCheckpoint)
+ * and each breeding site in turn (see BreedingSite.writeCheckpoint). Bump VERSION
+ * whenever the layout changes.
+ * <p>
+ * Run as a program to convert a text save into a checkpoint:
+ * Checkpoint BreedingSiteInfo.txt MosquitoInfo.txt out.bin [seed]
+ * @author Greg
+ *
+ */
+public final class Checkpoint
+{
+	public static final int MAGIC = 0x4d53434b; //"MSCK"
+	public static final int VERSION = 2;
+	private static final int HEADER_SIZE = 4 + 4 + 8;
+
+	private Checkpoint()
+	{
+	}
+
+	/**
+	 * Writes a checkpoint of an engine. Only call between updates.
+	 * @param engine The engine
+	 * @param file The file to write, replaced if it exists
+	 * @throws IOException If the file could not be written
+	 */
+	public static void write(SimulationEngine engine, File file) throws IOException
+	{
+		long bodySize = engine.getCheckpointSize();
+		if(HEADER_SIZE + bodySize > Integer.MAX_VALUE)
+		{
+			throw new IOException("Checkpoint of " + bodySize + " bytes is too large to map");
+		}
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + bodySize);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putLong(bodySize);
+			engine.writeCheckpoint(buffer);
+			if(buffer.hasRemaining())
+			{
+				throw new IOException("Checkpoint is " + buffer.remaining() + " bytes shorter than its computed size");
+			}
+		}
+	}
+
+	/**
+	 * Restores an engine from a checkpoint
+	 * @param file The file written by write
+	 * @return A new engine in the state the checkpointed one was in
+	 * @throws IOException If the file could not be read, or is not a checkpoint of this version
+	 */
+	public static SimulationEngine read(File file) throws IOException
+	{
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			if(channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE)
+			{
+				throw new IOException(file + " is not a checkpoint");
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if(buffer.getInt() != MAGIC)
+			{
+				throw new IOException(file + " is not a checkpoint");
+			}
+			int version = buffer.getInt();
+			if(version != VERSION)
+			{
+				throw new IOException(file + " is a version " + version + " checkpoint, expected version " + VERSION);
+			}
+			if(buffer.getLong() != buffer.remaining())
+			{
+				throw new IOException(file + " is truncated");
+			}
+			try
+			{
+				return new SimulationEngine(buffer);
+			} catch (BufferUnderflowException | IllegalStateException | IllegalArgumentException e) {
+				throw new IOException(file + " is corrupt or was written by an incompatible model", e);
+			}
+		}
+	}
+
+	/**
+	 * Converts a text save (as written by SimulationEngine.save) into a checkpoint. Text saves
+	 * hold neither the random number streams nor the day, so the checkpoint starts at day 0
+	 * with streams drawn from the engine's seed.
+	 * @param breedingSiteInfo The contents of BreedingSiteInfo.txt
+	 * @param mosquitoInfo The contents of MosquitoInfo.txt
+	 * @param engine An engine with the run's settings, whose mosquitoes and sites are replaced by the save's
+	 * @param file The checkpoint to write
+	 * @throws IOException If the checkpoint could not be written
+	 */
+	public static void convert(InputStream breedingSiteInfo, InputStream mosquitoInfo, SimulationEngine engine, File file) throws IOException
+	{
+		engine.load(breedingSiteInfo, mosquitoInfo);
+		write(engine, file);
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		if(args.length < 3)
+		{
+			System.out.println("Usage: Checkpoint BreedingSiteInfo.txt MosquitoInfo.txt out.bin [seed]");
+			return;
+		}
+		System.setProperty("java.awt.headless", "true");
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : RandomSource.randomSeed();
+		SimulationEngine engine = new SimulationEngine(600 * SimulationEngine.SCALE, 600 * SimulationEngine.SCALE,
+				SimulationEngine.DEFAULT_RADIUS, SimulationEngine.DEFAULT_SPEED, true, 0, 0, 0, 0, seed);
+		try(InputStream sites = new FileInputStream(args[0]); InputStream mosquitoes = new FileInputStream(args[1]))
+		{
+			convert(sites, mosquitoes, engine, new File(args[2]));
+		}
+		System.out.println("Wrote " + engine.getPopulation().size() + " mosquitoes and " + engine.getBreedingSites().size()
+				+ " breeding sites to " + args[2]);
+	}
+
+	//bulk copies between the checkpoint and the population's arrays
+
+	static void putInts(ByteBuffer buffer, int[] values, int n)
+	{
+		putInts(buffer, values, 0, n);
+	}
+
+	static void putInts(ByteBuffer buffer, int[] values, int offset, int n)
+	{
+		buffer.asIntBuffer().put(values, offset, n);
+		buffer.position(buffer.position() + 4 * n);
+	}
+
+	static void getInts(ByteBuffer buffer, int[] values, int n)
+	{
+		getInts(buffer, values, 0, n);
+	}
+
+	static void getInts(ByteBuffer buffer, int[] values, int offset, int n)
+	{
+		buffer.asIntBuffer().get(values, offset, n);
+		buffer.position(buffer.position() + 4 * n);
+	}
+
+	static void putDoubles(ByteBuffer buffer, double[] values, int n)
+	{
+		buffer.asDoubleBuffer().put(values, 0, n);
+		buffer.position(buffer.position() + 8 * n);
+	}
+
+	static void getDoubles(ByteBuffer buffer, double[] values, int n)
+	{
+		buffer.asDoubleBuffer().get(values, 0, n);
+		buffer.position(buffer.position() + 8 * n);
+	}
+
+	static double[] getDoubles(ByteBuffer buffer, int n)
+	{
+		double[] values = new double[n];
+		getDoubles(buffer, values, n);
+		return values;
+	}
+}
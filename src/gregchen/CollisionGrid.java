@@ -0,0 +1,204 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid for finding every pair of touching circles of the same radius.
+ * The cells are 2 * radius wide, so a circle can only touch circles in its own
+ * cell and the 8 cells around it. Each call to {@link #findPairs} sorts the circles
+ * into cells with a counting sort and writes the touching pairs into a pair buffer.
+ * All of the arrays are kept between calls and only grow, so a grid that is reused
+ * every update does not allocate once the population stops growing.
+ * @author Greg
+ *
+ */
+public class CollisionGrid
+{
+	private final double radius;
+	private final double cellSize;
+	private final int columns, rows;
+
+	private int[] cellStart; //index into sorted of the first circle in each cell, plus one end marker
+	private int[] cellOf = new int[0];
+	private int[] sorted = new int[0];
+	private int[] pairs = new int[64];
+	private int numPairs = 0;
+	private long numTested = 0;
+
+	/**
+	 * @param radius The radius of every circle
+	 * @param width Width of the area considered
+	 * @param height Height of the area considered
+	 */
+	public CollisionGrid(double radius, double width, double height)
+	{
+		this.radius = radius;
+		this.cellSize = 2 * radius;
+		this.columns = Math.max(1, (int)Math.ceil(width / cellSize));
+		this.rows = Math.max(1, (int)Math.ceil(height / cellSize));
+		cellStart = new int[columns * rows + 1];
+	}
+
+	/**
+	 * Finds every pair of touching circles. Each pair is reported once, with the lower index first.
+	 * @param x x coordinates of the circle centres
+	 * @param y y coordinates of the circle centres
+	 * @param count The number of circles (the arrays may be longer)
+	 * @return The number of pairs found
+	 */
+	public int findPairs(double[] x, double[] y, int count)
+	{
+		if(sorted.length < count)
+		{
+			sorted = new int[Math.max(count, 2 * sorted.length)];
+			cellOf = new int[sorted.length];
+		}
+		//counting sort of the circles by cell
+		Arrays.fill(cellStart, 0);
+		for(int i = 0; i < count; i++)
+		{
+			int cell = getRow(y[i]) * columns + getColumn(x[i]);
+			cellOf[i] = cell;
+			cellStart[cell + 1]++;
+		}
+		for(int c = 0; c < columns * rows; c++)
+		{
+			cellStart[c + 1] += cellStart[c];
+		}
+		for(int i = 0; i < count; i++)
+		{
+			sorted[cellStart[cellOf[i]]++] = i;
+		}
+		//the scatter moved each start to the next cell's start, so shift them back
+		for(int c = columns * rows; c > 0; c--)
+		{
+			cellStart[c] = cellStart[c - 1];
+		}
+		cellStart[0] = 0;
+
+		numPairs = 0;
+		numTested = 0;
+		double touching = 4 * radius * radius;
+		for(int row = 0; row < rows; row++)
+		{
+			for(int column = 0; column < columns; column++)
+			{
+				int cell = row * columns + column;
+				int start = cellStart[cell];
+				int end = cellStart[cell + 1];
+				numTested += (long)(end - start) * (end - start - 1) / 2;
+				for(int a = start; a < end; a++)
+				{
+					int i = sorted[a];
+					//the rest of this cell
+					for(int b = a + 1; b < end; b++)
+					{
+						testPair(x, y, i, sorted[b], touching);
+					}
+					//the neighbours after this cell (right, and the three below), so each pair is tested once
+					if(column + 1 < columns)
+					{
+						testCell(x, y, i, cell + 1, touching);
+					}
+					if(row + 1 < rows)
+					{
+						if(column > 0)
+						{
+							testCell(x, y, i, cell + columns - 1, touching);
+						}
+						testCell(x, y, i, cell + columns, touching);
+						if(column + 1 < columns)
+						{
+							testCell(x, y, i, cell + columns + 1, touching);
+						}
+					}
+				}
+			}
+		}
+		return numPairs;
+	}
+
+	private void testCell(double[] x, double[] y, int i, int cell, double touching)
+	{
+		numTested += cellStart[cell + 1] - cellStart[cell];
+		for(int b = cellStart[cell]; b < cellStart[cell + 1]; b++)
+		{
+			testPair(x, y, i, sorted[b], touching);
+		}
+	}
+
+	private void testPair(double[] x, double[] y, int i, int j, double touching)
+	{
+		double dx = x[i] - x[j];
+		double dy = y[i] - y[j];
+		if(dx * dx + dy * dy < touching)
+		{
+			if(2 * numPairs + 2 > pairs.length)
+			{
+				pairs = Arrays.copyOf(pairs, 2 * pairs.length);
+			}
+			pairs[2 * numPairs] = Math.min(i, j);
+			pairs[2 * numPairs + 1] = Math.max(i, j);
+			numPairs++;
+		}
+	}
+
+	private int getColumn(double x)
+	{
+		return Math.min(columns - 1, Math.max(0, (int)(x / cellSize)));
+	}
+
+	private int getRow(double y)
+	{
+		return Math.min(rows - 1, Math.max(0, (int)(y / cellSize)));
+	}
+
+	/**
+	 * @return The pairs found by the last call to findPairs, flattened as {a0, b0, a1, b1, ...}.
+	 * Only the first 2 * getNumPairs() entries are valid.
+	 */
+	public int[] getPairs()
+	{
+		return pairs;
+	}
+
+	/**
+	 * @return The number of pairs found by the last call to findPairs
+	 */
+	public int getNumPairs()
+	{
+		return numPairs;
+	}
+
+	/**
+	 * @return The number of pairs whose distance the last call to findPairs tested
+	 */
+	public long getNumTested()
+	{
+		return numTested;
+	}
+
+	public double getRadius()
+	{
+		return radius;
+	}
+}
@@ -0,0 +1,132 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes rows in a compact binary columnar format. Rows are gathered into blocks of
+ * up to BLOCK_ROWS, and each block is written column by column, which keeps the file
+ * small and lets a reader load one column without parsing the rest.
+ * <p>
+ * The file (big-endian, as written by DataOutputStream) is:
+ * <pre>
+ * int    MAGIC
+ * int    VERSION
+ * UTF    description
+ * int    number of columns, then a UTF name for each
+ * blocks, each:
+ *   int      number of rows n
+ *   double[n] day
+ *   int[n]    each of the other columns in turn
+ * int    0 (end marker)
+ * </pre>
+ * @author Greg
+ *
+ */
+public class ColumnarSink implements OutputSink
+{
+	public static final int MAGIC = 0x4d534f54; //"MSOT"
+	public static final int VERSION = 1;
+	public static final int BLOCK_ROWS = 4096;
+
+	private final DataOutputStream out;
+	private final double[] days = new double[BLOCK_ROWS];
+	private final int[][] counts = new int[COLUMNS.length - 1][BLOCK_ROWS];
+	private int rows = 0;
+
+	/**
+	 * @param file The file to write
+	 * @param description A line describing the run, or null for none
+	 * @throws IOException If the file could not be opened
+	 */
+	public ColumnarSink(File file, String description) throws IOException
+	{
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), DelimitedSink.BUFFER_SIZE));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeUTF(description == null ? "" : description);
+		out.writeInt(COLUMNS.length);
+		for(String column: COLUMNS)
+		{
+			out.writeUTF(column);
+		}
+	}
+
+	@Override
+	public void write(double day, int total, int males, int females, int numFF, int numFf, int numff) throws IOException
+	{
+		days[rows] = day;
+		counts[0][rows] = total;
+		counts[1][rows] = males;
+		counts[2][rows] = females;
+		counts[3][rows] = numFF;
+		counts[4][rows] = numFf;
+		counts[5][rows] = numff;
+		rows++;
+		if(rows == BLOCK_ROWS)
+		{
+			writeBlock();
+		}
+	}
+
+	private void writeBlock() throws IOException
+	{
+		if(rows == 0)
+		{
+			return;
+		}
+		out.writeInt(rows);
+		for(int i = 0; i < rows; i++)
+		{
+			out.writeDouble(days[i]);
+		}
+		for(int[] column: counts)
+		{
+			for(int i = 0; i < rows; i++)
+			{
+				out.writeInt(column[i]);
+			}
+		}
+		rows = 0;
+	}
+
+	/**
+	 * Writes the rows gathered so far as a (short) block, then flushes the file
+	 */
+	@Override
+	public void flush() throws IOException
+	{
+		writeBlock();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		writeBlock();
+		out.writeInt(0);
+		out.close();
+	}
+}
@@ -0,0 +1,119 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Removes dead entries from a collection in one pass. Rather than removing each
+ * entry as soon as it dies (which shifts or swaps the rest every time), the update
+ * loops only mark entries, and a single stable sweep afterwards moves every survivor
+ * down to the next free slot and cuts off the tail. Survivors keep their order and
+ * nothing is allocated.
+ * @author Greg
+ *
+ */
+public final class Compaction
+{
+	/**
+	 * An indexed collection which can be compacted in place, e.g. the parallel arrays of a MosquitoPopulation
+	 */
+	public interface Store
+	{
+		int size();
+		/**
+		 * @return Whether entry i should be removed
+		 */
+		boolean isRemoved(int i);
+		/**
+		 * Copies entry from into slot to (to is always lower than from)
+		 */
+		void move(int from, int to);
+		/**
+		 * Cuts the collection down to its first size entries
+		 */
+		void setSize(int size);
+	}
+
+	private Compaction()
+	{
+	}
+
+	/**
+	 * Removes every entry of a store marked as removed, keeping the order of the rest
+	 * @param store The store
+	 * @return The number of entries removed
+	 */
+	public static int compact(Store store)
+	{
+		int size = store.size();
+		int write = 0;
+		for(int read = 0; read < size; read++)
+		{
+			if(!store.isRemoved(read))
+			{
+				if(read != write)
+				{
+					store.move(read, write);
+				}
+				write++;
+			}
+		}
+		store.setSize(write);
+		return size - write;
+	}
+
+	/**
+	 * Removes every element of a list that is not kept, keeping the order of the rest
+	 * @param list The list
+	 * @param keep Which elements to keep
+	 * @param removed If not null, the removed elements are added to it in order
+	 * @return The number of elements removed
+	 */
+	public static <T> int compact(ArrayList<T> list, Predicate<? super T> keep, List<? super T> removed)
+	{
+		int size = list.size();
+		int write = 0;
+		for(int read = 0; read < size; read++)
+		{
+			T element = list.get(read);
+			if(keep.test(element))
+			{
+				if(read != write)
+				{
+					list.set(write, element);
+				}
+				write++;
+			}
+			else if(removed != null)
+			{
+				removed.add(element);
+			}
+		}
+		//removing from the end does not shift anything
+		for(int i = size - 1; i >= write; i--)
+		{
+			list.remove(i);
+		}
+		return size - write;
+	}
+}
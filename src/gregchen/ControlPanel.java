@@ -25,6 +25,7 @@ import java.util.Random;
 
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JFormattedTextField;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -54,6 +55,8 @@ public class ControlPanel extends JPanel implements ActionListener
 	private JButton startButton;
 	private JCheckBox fsRIDLCheckBox;
 	private JCheckBox showBreedingSitesBox;
+	private JCheckBox excelExportBox;
+	private JComboBox<TimeSeriesRecorder.Sampling> samplingBox;
 	
 	private JSpinner initialNumberSpinner = null;
 	//private JSpinner radiusSpinner = null;
@@ -121,6 +124,26 @@ public class ControlPanel extends JPanel implements ActionListener
 		this.add(newLabel2);
 		this.add(showBreedingSitesBox);
 		
+		JLabel newLabel3 = new JLabel("Output Sampling");
+		newLabel3.setLocation(JLABEL_X_POSITION, itemYPosition);
+		newLabel3.setSize(200, 30);
+		samplingBox = new JComboBox<TimeSeriesRecorder.Sampling>(TimeSeriesRecorder.Sampling.values());
+		samplingBox.setSize(75, 30);
+		samplingBox.setLocation(JSPINNER_X_POSITION, itemYPosition);
+		itemYPosition += Y_INCREMENT;
+		this.add(newLabel3);
+		this.add(samplingBox);
+		
+		JLabel newLabel4 = new JLabel("Also Export to Excel");
+		newLabel4.setLocation(JLABEL_X_POSITION, itemYPosition);
+		newLabel4.setSize(200, 30);
+		excelExportBox = new JCheckBox("", false);
+		excelExportBox.setSize(30, 30);
+		excelExportBox.setLocation(JSPINNER_X_POSITION, itemYPosition);
+		itemYPosition += Y_INCREMENT;
+		this.add(newLabel4);
+		this.add(excelExportBox);
+		
 		//add button
 		
 		startButton = new JButton();
@@ -166,6 +189,7 @@ public class ControlPanel extends JPanel implements ActionListener
 		int numPerRelease = (Integer)this.numPerReleaseSpinner.getValue();
 		
 		Simulation sim = new Simulation(600, 600, radius, speed, fsRIDL, showBreedingSites, initialNumber, numReleases, releaseInterval, numPerRelease);
+		sim.setOutput((TimeSeriesRecorder.Sampling)samplingBox.getSelectedItem(), excelExportBox.isSelected());
 		
 		//sim.setNumPerRelease((Integer)this.numPerReleaseSpinner.getValue());
 	
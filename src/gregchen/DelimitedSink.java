@@ -0,0 +1,90 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams rows to a comma or tab separated text file. The description goes on a
+ * first line starting with '#', followed by the column headings.
+ * @author Greg
+ *
+ */
+public class DelimitedSink implements OutputSink
+{
+	public static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Writer out;
+	private final char separator;
+	private final StringBuilder line = new StringBuilder();
+
+	/**
+	 * @param file The file to write
+	 * @param separator The column separator, e.g. ',' or '\t'
+	 * @param description A line describing the run, or null for none
+	 * @throws IOException If the file could not be opened
+	 */
+	public DelimitedSink(File file, char separator, String description) throws IOException
+	{
+		this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE);
+		this.separator = separator;
+		if(description != null)
+		{
+			out.write("# " + description + "\n");
+		}
+		for(int i = 0; i < COLUMNS.length; i++)
+		{
+			if(i > 0)
+			{
+				out.write(separator);
+			}
+			out.write(COLUMNS[i]);
+		}
+		out.write('\n');
+	}
+
+	@Override
+	public void write(double day, int total, int males, int females, int numFF, int numFf, int numff) throws IOException
+	{
+		line.setLength(0);
+		line.append(day).append(separator).append(total).append(separator).append(males).append(separator)
+				.append(females).append(separator).append(numFF).append(separator).append(numFf).append(separator)
+				.append(numff).append('\n');
+		out.append(line);
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		out.close();
+	}
+}
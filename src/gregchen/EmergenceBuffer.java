@@ -0,0 +1,129 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+
+package gregchen;
+
+import java.util.Arrays;
+
+/**
+ * The pupae emerging from breeding sites in one update, as (birth location, gender,
+ * genotype, count) records. A site whose pupae are aggregated hands over one record per
+ * gender and genotype rather than one Pupa object per emerging pupa, and the engine turns
+ * the records straight into adults, so nothing is allocated per emergence. The arrays
+ * only grow, so a buffer is reused every update.
+ * @author Greg
+ *
+ */
+public class EmergenceBuffer
+{
+	private static final Gender[] GENDERS = Gender.values();
+	private static final Genotype[] GENOTYPES = Genotype.values();
+
+	private int size = 0;
+	private Position[] birthLocation = new Position[16];
+	private byte[] gender = new byte[16];
+	private byte[] genotype = new byte[16];
+	private int[] count = new int[16];
+
+	/**
+	 * Adds a record
+	 * @param birthLocation Where the pupae were born
+	 * @param gender Their gender
+	 * @param genotype Their genotype
+	 * @param count How many emerge, ignored if 0
+	 */
+	public void add(Position birthLocation, Gender gender, Genotype genotype, int count)
+	{
+		if(count <= 0)
+		{
+			return;
+		}
+		if(size == this.count.length)
+		{
+			int capacity = 2 * size;
+			this.birthLocation = Arrays.copyOf(this.birthLocation, capacity);
+			this.gender = Arrays.copyOf(this.gender, capacity);
+			this.genotype = Arrays.copyOf(this.genotype, capacity);
+			this.count = Arrays.copyOf(this.count, capacity);
+		}
+		this.birthLocation[size] = birthLocation;
+		this.gender[size] = (byte)gender.ordinal();
+		this.genotype[size] = (byte)genotype.ordinal();
+		this.count[size] = count;
+		size++;
+	}
+
+	/**
+	 * Adds a single pupa
+	 * @param pupa The pupa
+	 */
+	public void add(Pupa pupa)
+	{
+		add(pupa.getBirthLocation(), pupa.getGender(), pupa.getGenotype(), 1);
+	}
+
+	/**
+	 * Removes every record, dropping the references to the birth locations
+	 */
+	public void clear()
+	{
+		Arrays.fill(birthLocation, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * @return The number of records
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return The number of pupae in every record together
+	 */
+	public int getTotal()
+	{
+		int total = 0;
+		for(int i = 0; i < size; i++)
+		{
+			total += count[i];
+		}
+		return total;
+	}
+
+	public Position getBirthLocation(int i)
+	{
+		return birthLocation[i];
+	}
+	public Gender getGender(int i)
+	{
+		return GENDERS[gender[i]];
+	}
+	public Genotype getGenotype(int i)
+	{
+		return GENOTYPES[genotype[i]];
+	}
+	public int getCount(int i)
+	{
+		return count[i];
+	}
+}
@@ -0,0 +1,184 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.poi.hssf.usermodel.HSSFDataFormat;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * Writes rows to an Excel (.xls) workbook, laid out as the simulation window always
+ * has. The workbook is kept in memory until the sink is closed, and a sheet holds at
+ * most 65,536 rows, so this is meant as an export for short or sparsely sampled runs;
+ * rows past the limit are dropped with a warning.
+ * @author Greg
+ *
+ */
+public class ExcelSink implements OutputSink
+{
+	public static final int MAX_ROWS = 65536;
+
+	private final File file;
+	private final Workbook wb;
+	private final Sheet s;
+	private int currentRow = 0;
+	private boolean warned = false;
+
+	/**
+	 * @param file The file to write when the sink is closed
+	 * @param description A line describing the run, or null for none
+	 */
+	public ExcelSink(File file, String description)
+	{
+		this.file = file;
+		// create a new workbook
+		wb = new HSSFWorkbook();
+		// create a new sheet
+		s = wb.createSheet();
+		// declare a row object reference
+		Row r = null;
+		// declare a cell object reference
+		Cell c = null;
+		// create 3 cell styles
+		CellStyle cs = wb.createCellStyle();
+		CellStyle cs2 = wb.createCellStyle();
+		CellStyle cs3 = wb.createCellStyle();
+		DataFormat df = wb.createDataFormat();
+		// create 2 fonts objects
+		Font f = wb.createFont();
+		Font f2 = wb.createFont();
+
+		//set font 1 to 12 point type
+		f.setFontHeightInPoints((short) 12);
+		//make it blue
+		f.setColor( (short)0xc );
+		// make it bold
+		//arial is the default font
+		f.setBoldweight(Font.BOLDWEIGHT_BOLD);
+
+		//set font 2 to 10 point type
+		f2.setFontHeightInPoints((short) 10);
+		//make it red
+		f2.setColor( (short)Font.COLOR_RED );
+		//make it bold
+		f2.setBoldweight(Font.BOLDWEIGHT_BOLD);
+
+		f2.setStrikeout( true );
+
+		//set cell stlye
+		cs.setFont(f);
+		//set the cell format 
+		cs.setDataFormat(df.getFormat("#,##0.0"));
+
+		//set a thin border
+		cs2.setBorderBottom(CellStyle.BORDER_THIN);
+		//fill w fg fill color
+		cs2.setFillPattern((short) CellStyle.SOLID_FOREGROUND);
+		//set the cell format to text see DataFormat for a full list
+		cs2.setDataFormat(HSSFDataFormat.getBuiltinFormat("text"));
+
+		// set the font
+		cs2.setFont(f2);
+
+		// set the sheet name in Unicode
+		wb.setSheetName(0, "Greg Chen");
+		// Make header cells
+		
+		r = s.createRow(0);
+		c = r.createCell(COLUMNS.length);
+		c.setCellStyle(cs3);
+		if(description != null)
+		{
+			c.setCellValue(description);
+		}
+		
+		currentRow = 2;
+		for (short cellnum = (short) 0; cellnum < COLUMNS.length; cellnum ++)
+	    {
+	        c = r.createCell(cellnum);
+	        c.setCellValue(COLUMNS[cellnum]);
+            c.setCellStyle(cs);
+
+	        // make this column a bit wider
+            if(cellnum > 0)
+            {
+            	s.setColumnWidth((short) (cellnum), (short) ((300) / ((double) 1 / 20)));
+            }
+	        r.setHeight((short) 800);
+	    }
+	}
+
+	@Override
+	public void write(double day, int total, int males, int females, int numFF, int numFf, int numff)
+	{
+		if(currentRow >= MAX_ROWS)
+		{
+			if(!warned)
+			{
+				System.err.println(file + " is full (" + MAX_ROWS + " rows); later rows are not exported");
+				warned = true;
+			}
+			return;
+		}
+		Row r = s.createRow(currentRow);
+		
+		r.createCell(0).setCellValue(day);
+		r.createCell(1).setCellValue(total);
+		r.createCell(2).setCellValue(males);
+		r.createCell(3).setCellValue(females);
+		r.createCell(4).setCellValue(numFF);
+		r.createCell(5).setCellValue(numFf);
+		r.createCell(6).setCellValue(numff);
+		
+		currentRow++;
+	}
+
+	/**
+	 * Does nothing: a workbook can only be written as a whole, on close
+	 */
+	@Override
+	public void flush()
+	{
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		OutputStream excelOut = new FileOutputStream(file);
+		try
+		{
+			wb.write(excelOut);
+		} finally
+		{
+			excelOut.close();
+		}
+	}
+}
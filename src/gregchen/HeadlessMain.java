@@ -0,0 +1,105 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Runs a single simulation without a window, as fast as the CPU allows,
+ * and prints the population once per simulated day.
+ * Arguments (all optional, in order): days, initial number, number of releases,
+ * release interval, number per release, female-lethal gene (true/false), seed,
+ * number of threads for the adult phase (1 runs sequentially), an output file for the
+ * full time series (.csv, .tsv, .bin or .xls, see OutputSink.open) and its sampling
+ * (TICK, HOURLY or DAILY), and what to do when the output writer falls behind (GROW, DROP or BLOCK).
+ * The time spent in each phase of an update is published over JMX while it runs, see
+ * SimulationMetrics, and printed at the end.
+ * @author Greg
+ *
+ */
+public class HeadlessMain
+{
+	public static void main(String[] args) throws IOException
+	{
+		System.setProperty("java.awt.headless", "true");
+
+		double days = args.length > 0 ? Double.parseDouble(args[0]) : 300;
+		int initialNumber = args.length > 1 ? Integer.parseInt(args[1]) : 1000 * SimulationEngine.SCALE * SimulationEngine.SCALE;
+		int numReleases = args.length > 2 ? Integer.parseInt(args[2]) : 7;
+		double releaseInterval = args.length > 3 ? Double.parseDouble(args[3]) : 7;
+		int numPerRelease = args.length > 4 ? Integer.parseInt(args[4]) : 1000;
+		boolean fsRIDL = args.length > 5 ? Boolean.parseBoolean(args[5]) : true;
+		long seed = args.length > 6 ? Long.parseLong(args[6]) : RandomSource.randomSeed();
+		int threads = args.length > 7 ? Integer.parseInt(args[7]) : 1;
+		String outputFile = args.length > 8 ? args[8] : null;
+		TimeSeriesRecorder.Sampling sampling = args.length > 9 ? TimeSeriesRecorder.Sampling.valueOf(args[9].toUpperCase())
+				: TimeSeriesRecorder.Sampling.DAILY;
+		AsyncSink.Backpressure backpressure = args.length > 10 ? AsyncSink.Backpressure.valueOf(args[10].toUpperCase())
+				: AsyncSink.Backpressure.GROW;
+
+		SimulationEngine engine = new SimulationEngine(600 * SimulationEngine.SCALE, 600 * SimulationEngine.SCALE,
+				SimulationEngine.DEFAULT_RADIUS, SimulationEngine.DEFAULT_SPEED, fsRIDL,
+				initialNumber, numReleases, releaseInterval, numPerRelease, seed);
+		engine.setThreads(threads);
+		SimulationMetrics metrics = new SimulationMetrics("Headless seed " + seed);
+		engine.setMetrics(metrics);
+		metrics.register();
+		TimeSeriesRecorder recorder = null;
+		if(outputFile != null)
+		{
+			recorder = new TimeSeriesRecorder(sampling);
+			OutputSink sink = OutputSink.open(new File(outputFile), "Seed: " + seed + " Initial number: " + initialNumber
+					+ " Number per release: " + numPerRelease + " Number Releases: " + numReleases
+					+ " Release Interval: " + releaseInterval + " Female lethal gene: " + fsRIDL);
+			recorder.addSink(new AsyncSink(sink, backpressure));
+		}
+
+		System.out.println("Seed: " + seed);
+		long start = System.nanoTime();
+		System.out.println("Day\tTotal\tMales\tFemales\tFF\tFf\tff");
+		for(int day = 1; day <= days && !engine.isFinished(); day++)
+		{
+			if(recorder == null)
+			{
+				engine.run(day);
+			}
+			else
+			{
+				while(!engine.isFinished() && engine.getSimulationDay() < day)
+				{
+					engine.update();
+					long outputStart = System.nanoTime();
+					recorder.record(engine);
+					metrics.endPhase(SimulationMetrics.Phase.OUTPUT, outputStart);
+				}
+			}
+			System.out.println(day + "\t" + engine.getPopulation().size() + "\t" + engine.getNumMales() + "\t"
+					+ engine.getNumFemales() + "\t" + engine.getNumFF() + "\t" + engine.getNumFf() + "\t" + engine.getNumff());
+		}
+		if(recorder != null)
+		{
+			recorder.close();
+		}
+		System.out.println("Finished in " + (System.nanoTime() - start) / 1000000 + " ms");
+		System.out.println(metrics.getSummary());
+		metrics.unregister();
+	}
+}
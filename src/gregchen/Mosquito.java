@@ -19,8 +19,6 @@
 
 package gregchen;
 import java.awt.Color;
-import java.util.Random;
-import java.util.Scanner;
 
 /**
  * A class defining mosquito objects in the simulation which track
@@ -49,7 +47,6 @@ public class Mosquito extends Actor
 	private int numTimesMated = 0;
 	private Gender gender;
 	private Genotype genotype;
-	private Random random = new Random();
 	private double numDaysCarryingEggs = 0;
 	private boolean carryingEggs = false;
 	private Genotype genotypeMate;
@@ -125,26 +122,11 @@ public class Mosquito extends Actor
 		case 2:
 			this.genotypeMate = Genotype.FF; break;
 		}
-		if(this.gender == Gender.MALE)
-		{
-			this.setSprites(new SpriteSheet(Actor.CIRCLE_FILE_LOCATION, this.getRadius()));
-		}
-		else
-		{
-			this.setSprites(new SpriteSheet(Mosquito.DOT_CIRCLE_FILE_LOCATION, this.getRadius()));
-		}
-		if(genotype == Genotype.FF)
-		{
-			this.setColor(Color.RED);
-		}
-		if(genotype == Genotype.ff)
-		{
-			this.setColor(Color.GREEN);
-		}
-		else if(genotype == Genotype.Ff)
+		if(this.gender == Gender.FEMALE)
 		{
-			this.setColor(Color.MAGENTA);
+			this.setSpriteFile(Mosquito.DOT_CIRCLE_FILE_LOCATION);
 		}
+		this.setColor(SpriteSheet.getColor(genotype));
 	}
 	
 	/**
@@ -154,29 +136,19 @@ public class Mosquito extends Actor
 	 * @param speed
 	 * @param gender Either male or female enum value
 	 * @param genotype FF, Ff, or ff enum value
+	 * @param random The simulation's random number stream
 	 */
-	public Mosquito(double radius, Position birthLocation, double speed, Gender gender, Genotype genotype)
+	public Mosquito(double radius, Position birthLocation, double speed, Gender gender, Genotype genotype, RandomSource random)
 	{
-		super(radius, birthLocation, speed, Color.WHITE);
+		super(radius, birthLocation, speed, Color.WHITE, random);
 		this.genotype = genotype;
 		this.gender = gender;
 		
 		if(this.gender == Gender.FEMALE)
 		{
-			this.setSprites(new SpriteSheet(Mosquito.DOT_CIRCLE_FILE_LOCATION, this.getRadius()));
-		}
-		if(genotype == Genotype.ff)
-		{
-			this.setColor(Color.GREEN);
-		}
-		else if(genotype == Genotype.Ff)
-		{
-			this.setColor(Color.MAGENTA);
-		}
-		else if(genotype == Genotype.FF)
-		{
-			this.setColor(Color.RED);
+			this.setSpriteFile(Mosquito.DOT_CIRCLE_FILE_LOCATION);
 		}
+		this.setColor(SpriteSheet.getColor(genotype));
 	}
 	/**
 	 * The 'standard' Mosquito constructor
@@ -186,18 +158,19 @@ public class Mosquito extends Actor
 	 * @param speed
 	 * @param gender Either male or female enum value
 	 * @param genotype FF, Ff, or ff enum value
+	 * @param random The simulation's random number stream
 	 */
-	public Mosquito(double radius, Position location, Position birthLocation, double speed, Gender gender, Genotype genotype)
+	public Mosquito(double radius, Position location, Position birthLocation, double speed, Gender gender, Genotype genotype, RandomSource random)
 	{
-		this(radius, birthLocation, speed, gender, genotype);
+		this(radius, birthLocation, speed, gender, genotype, random);
 		
 		this.setLocation(location);
 	}
 	
 	@Override
-	public void update()
+	public void update(RandomSource random)
 	{
-		super.update();
+		super.update(random);
 		if(random.nextDouble() < MORTALITY_PROB)
 		{
 			this.kill();
@@ -321,12 +294,12 @@ public class Mosquito extends Actor
 	 * Gets a random genotype according to Mendelian genetics given parental genotypes
 	 * @param g1 Parent 1 genotype
 	 * @param g2 Parent 2 genotpye
+	 * @param random The simulation's random number stream
 	 * @return
 	 */
-	public static Genotype getRandomGenotype(Genotype g1, Genotype g2)
+	public static Genotype getRandomGenotype(Genotype g1, Genotype g2, RandomSource random)
 	{
 		Genotype theGenotype = null; 
-		Random random = new Random();
 		if(g1 == Genotype.ff && g2 == Genotype.ff)
 		{
 			theGenotype = Genotype.ff;
@@ -0,0 +1,784 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Stores the adult mosquitoes of a simulation as parallel primitive arrays
+ * ("struct of arrays") rather than as one {@link Mosquito} object each. Mosquito i
+ * is the i-th entry of every array. Gender, genotype, the mate's genotype and the
+ * egg/alive flags are packed into one byte per mosquito.
+ * <p>
+ * The movement and life-history rules are the same as those of {@link Actor} and
+ * {@link Mosquito}, but they run directly over the arrays, so the whole population
+ * is a handful of objects however many mosquitoes it holds. A mosquito is removed by
+ * killing it and letting {@link #removeDead()} move the survivors down in one pass, so
+ * indices are not stable across removals; use {@link #getId(int)} to follow a mosquito.
+ * <p>
+ * The number of mosquitoes of each gender and genotype is kept up to date as they are
+ * added and removed, so reading it never scans the population. A mosquito that has
+ * been killed still counts until removeDead takes it out.
+ * <p>
+ * The egg-laying cycle is event driven rather than polled. Mating schedules the female's
+ * egg deposit on a TimingWheel, keyed by her id (mosquitoes are always kept in id order,
+ * so an id is found by binary search), and laying her eggs records the first update in
+ * which she may mate again. Her day counters are only stored with the update they were
+ * set in, and aged on demand (see UpdateClock), instead of being added to every update.
+ * <p>
+ * Likewise, a mosquito does not flip a coin for mortality in every update: the update it
+ * dies in is drawn once, from the geometric distribution, the first time it is updated.
+ * Since the chance of dying is the same in every update, the two come to the same thing.
+ * @author Greg
+ *
+ */
+public class MosquitoPopulation
+{
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final Genotype[] GENOTYPES = Genotype.values();
+
+	//bit layout of the traits byte
+	private static final int FEMALE = 1;
+	private static final int GENOTYPE_SHIFT = 1;
+	private static final int MATE_GENOTYPE_SHIFT = 3;
+	private static final int GENOTYPE_MASK = 3;
+	private static final int CARRYING_EGGS = 1 << 5;
+	private static final int DEAD = 1 << 6;
+	private static final int READY_TO_DEPOSIT = 1 << 7; //set by nextUpdate in the update her eggs are due
+	private static final int GROUP_MASK = FEMALE | GENOTYPE_MASK << GENOTYPE_SHIFT; //gender and genotype
+	private static final int DEPOSIT_HORIZON = 4 * SimulationEngine.UPDATES_PER_DAY;
+	private static final int NOT_DRAWN = -1;
+
+	private final double radius;
+	private int size = 0;
+	private int nextId = 0;
+	private int updateCount = 0; //number of adult phases started, see nextUpdate
+
+	private int[] id;
+	private double[] x, y;
+	private double[] birthX, birthY;
+	private double[] direction;
+	private double[] speed;
+	private double[] age;
+	private double[] daysSinceOvipos; //as of oviposUpdate (females age it every update)
+	private double[] numDaysCarryingEggs; //as of eggsUpdate (it ages while carrying eggs)
+	private int[] oviposUpdate, eggsUpdate;
+	private int[] fertileUpdate; //first update in which a female is DAYS_UNTIL_FERTILE_AFTER_OVIPOS past laying
+	private int[] deathUpdate; //update in which a mosquito dies, NOT_DRAWN until its first update
+	private byte[] numTimesMated;
+	private byte[] traits;
+	private byte[] animationPhase; //only read when drawing
+	private final int[] groupCounts = new int[GROUP_MASK + 1]; //number of mosquitoes by traits & GROUP_MASK
+	private final TimingWheel<Integer> deposits; //ids of females, in the update they lay their eggs
+	private final ArrayList<Integer> dueDeposits = new ArrayList<Integer>();
+	private final Compaction.Store store = new Compaction.Store()
+	{
+		public int size()
+		{
+			return size;
+		}
+		public boolean isRemoved(int i)
+		{
+			if((traits[i] & DEAD) == 0)
+			{
+				return false;
+			}
+			//compact asks once per entry, so this is where the dead leave the counts
+			groupCounts[traits[i] & GROUP_MASK]--;
+			return true;
+		}
+		public void move(int from, int to)
+		{
+			copy(from, to);
+		}
+		public void setSize(int newSize)
+		{
+			size = newSize;
+		}
+	};
+
+	/**
+	 * @param radius The radius shared by every mosquito
+	 */
+	public MosquitoPopulation(double radius)
+	{
+		this(radius, INITIAL_CAPACITY);
+	}
+
+	/**
+	 * @param radius The radius shared by every mosquito
+	 * @param capacity The number of mosquitoes to allocate room for
+	 */
+	public MosquitoPopulation(double radius, int capacity)
+	{
+		this.radius = radius;
+		capacity = Math.max(capacity, 1);
+		id = new int[capacity];
+		x = new double[capacity];
+		y = new double[capacity];
+		birthX = new double[capacity];
+		birthY = new double[capacity];
+		direction = new double[capacity];
+		speed = new double[capacity];
+		age = new double[capacity];
+		daysSinceOvipos = new double[capacity];
+		numDaysCarryingEggs = new double[capacity];
+		oviposUpdate = new int[capacity];
+		eggsUpdate = new int[capacity];
+		fertileUpdate = new int[capacity];
+		deathUpdate = new int[capacity];
+		numTimesMated = new byte[capacity];
+		traits = new byte[capacity];
+		animationPhase = new byte[capacity];
+		deposits = new TimingWheel<Integer>(DEPOSIT_HORIZON);
+	}
+
+	/**
+	 * Copy constructor, e.g. for forking a simulation. Every array is cloned in one bulk
+	 * copy, cut down to the mosquitoes actually present.
+	 * @param other The population to copy
+	 */
+	public MosquitoPopulation(MosquitoPopulation other)
+	{
+		radius = other.radius;
+		size = other.size;
+		nextId = other.nextId;
+		updateCount = other.updateCount;
+		int capacity = Math.max(size, 1);
+		id = Arrays.copyOf(other.id, capacity);
+		x = Arrays.copyOf(other.x, capacity);
+		y = Arrays.copyOf(other.y, capacity);
+		birthX = Arrays.copyOf(other.birthX, capacity);
+		birthY = Arrays.copyOf(other.birthY, capacity);
+		direction = Arrays.copyOf(other.direction, capacity);
+		speed = Arrays.copyOf(other.speed, capacity);
+		age = Arrays.copyOf(other.age, capacity);
+		daysSinceOvipos = Arrays.copyOf(other.daysSinceOvipos, capacity);
+		numDaysCarryingEggs = Arrays.copyOf(other.numDaysCarryingEggs, capacity);
+		oviposUpdate = Arrays.copyOf(other.oviposUpdate, capacity);
+		eggsUpdate = Arrays.copyOf(other.eggsUpdate, capacity);
+		fertileUpdate = Arrays.copyOf(other.fertileUpdate, capacity);
+		deathUpdate = Arrays.copyOf(other.deathUpdate, capacity);
+		numTimesMated = Arrays.copyOf(other.numTimesMated, capacity);
+		traits = Arrays.copyOf(other.traits, capacity);
+		animationPhase = Arrays.copyOf(other.animationPhase, capacity);
+		System.arraycopy(other.groupCounts, 0, groupCounts, 0, groupCounts.length);
+		deposits = new TimingWheel<Integer>(other.deposits);
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if(capacity <= x.length)
+		{
+			return;
+		}
+		int newCapacity = Math.max(capacity, x.length * 2);
+		id = Arrays.copyOf(id, newCapacity);
+		x = Arrays.copyOf(x, newCapacity);
+		y = Arrays.copyOf(y, newCapacity);
+		birthX = Arrays.copyOf(birthX, newCapacity);
+		birthY = Arrays.copyOf(birthY, newCapacity);
+		direction = Arrays.copyOf(direction, newCapacity);
+		speed = Arrays.copyOf(speed, newCapacity);
+		age = Arrays.copyOf(age, newCapacity);
+		daysSinceOvipos = Arrays.copyOf(daysSinceOvipos, newCapacity);
+		numDaysCarryingEggs = Arrays.copyOf(numDaysCarryingEggs, newCapacity);
+		oviposUpdate = Arrays.copyOf(oviposUpdate, newCapacity);
+		eggsUpdate = Arrays.copyOf(eggsUpdate, newCapacity);
+		fertileUpdate = Arrays.copyOf(fertileUpdate, newCapacity);
+		deathUpdate = Arrays.copyOf(deathUpdate, newCapacity);
+		numTimesMated = Arrays.copyOf(numTimesMated, newCapacity);
+		traits = Arrays.copyOf(traits, newCapacity);
+		animationPhase = Arrays.copyOf(animationPhase, newCapacity);
+	}
+
+	/**
+	 * Adds a newly born mosquito near its birth location, the same way the Actor constructor places it
+	 * @param birthLocation Where it was born
+	 * @param speed Number of pixel distances to move per update
+	 * @param gender Male or female
+	 * @param genotype FF, Ff or ff
+	 * @param random The simulation's random number stream
+	 * @return The index of the new mosquito
+	 */
+	public int add(Position birthLocation, double speed, Gender gender, Genotype genotype, RandomSource random)
+	{
+		double theta = 2 * Math.PI * random.nextDouble();
+		double r = 30 * random.nextDouble();
+		double direction = 2 * Math.PI * random.nextDouble();
+		return add(birthLocation.x + r * Math.cos(theta), birthLocation.y + r * Math.sin(theta),
+				birthLocation.x, birthLocation.y, direction, speed, 0, gender, genotype);
+	}
+
+	/**
+	 * Adds a mosquito with the given state
+	 * @return The index of the new mosquito
+	 */
+	public int add(double x, double y, double birthX, double birthY, double direction, double speed, double age, Gender gender, Genotype genotype)
+	{
+		ensureCapacity(size + 1);
+		int i = size++;
+		this.id[i] = nextId++;
+		this.x[i] = x;
+		this.y[i] = y;
+		this.birthX[i] = birthX;
+		this.birthY[i] = birthY;
+		this.direction[i] = direction;
+		this.speed[i] = speed;
+		this.age[i] = age;
+		this.deathUpdate[i] = NOT_DRAWN;
+		this.numTimesMated[i] = 0;
+		this.traits[i] = (byte)((gender == Gender.FEMALE ? FEMALE : 0) | genotype.ordinal() << GENOTYPE_SHIFT);
+		groupCounts[traits[i] & GROUP_MASK]++;
+		setDaysSinceOvipos(i, 3.5);
+		setNumDaysCarryingEggs(i, 0);
+		this.animationPhase[i] = SpriteSheet.getInitialPhase(id[i]);
+		return i;
+	}
+
+	/**
+	 * Copies the state of a stand-alone Mosquito object (e.g. one loaded from a save) into the population
+	 * @param m The mosquito
+	 * @return The index of the new mosquito
+	 */
+	public int add(Mosquito m)
+	{
+		int i = add(m.getLocation().x, m.getLocation().y, m.getBirthLocation().x, m.getBirthLocation().y,
+				m.getDirection(), m.getSpeed(), m.getAge(), m.getGender(), m.getGenotype());
+		numTimesMated[i] = (byte)m.getNumTimesMated();
+		if(m.carryingEggs())
+		{
+			traits[i] |= CARRYING_EGGS;
+		}
+		if(m.getGenotypeMate() != null)
+		{
+			traits[i] |= m.getGenotypeMate().ordinal() << MATE_GENOTYPE_SHIFT;
+		}
+		if(!m.isAlive())
+		{
+			traits[i] |= DEAD;
+		}
+		setDaysSinceOvipos(i, m.getDaysSinceOvipos());
+		setNumDaysCarryingEggs(i, m.getNumDaysCarryingEggs());
+		return i;
+	}
+
+	/**
+	 * Removes every dead mosquito in one pass, keeping the order of the living ones
+	 * @return The number removed
+	 */
+	public int removeDead()
+	{
+		return Compaction.compact(store);
+	}
+
+	private void copy(int from, int to)
+	{
+		id[to] = id[from];
+		x[to] = x[from];
+		y[to] = y[from];
+		birthX[to] = birthX[from];
+		birthY[to] = birthY[from];
+		direction[to] = direction[from];
+		speed[to] = speed[from];
+		age[to] = age[from];
+		daysSinceOvipos[to] = daysSinceOvipos[from];
+		numDaysCarryingEggs[to] = numDaysCarryingEggs[from];
+		oviposUpdate[to] = oviposUpdate[from];
+		eggsUpdate[to] = eggsUpdate[from];
+		fertileUpdate[to] = fertileUpdate[from];
+		deathUpdate[to] = deathUpdate[from];
+		numTimesMated[to] = numTimesMated[from];
+		traits[to] = traits[from];
+		animationPhase[to] = animationPhase[from];
+	}
+
+	/**
+	 * Removes every mosquito
+	 */
+	public void clear()
+	{
+		size = 0;
+		Arrays.fill(groupCounts, 0);
+		deposits.clear();
+	}
+
+	/**
+	 * Forgets when every mosquito will die, so that each draws it again at its next update,
+	 * as mosquitoes loaded from a text save do. This does not change the distribution.
+	 */
+	public void forgetDeathUpdates()
+	{
+		Arrays.fill(deathUpdate, 0, size, NOT_DRAWN);
+	}
+
+	/**
+	 * @return The number of bytes writeCheckpoint will write
+	 */
+	public long getCheckpointSize()
+	{
+		return 8 + (long)size * (2 * 4 + 9 * 8 + 3);
+	}
+
+	/**
+	 * Writes every mosquito into a checkpoint, one whole array at a time (see Checkpoint)
+	 * @param buffer Where to write, with room for getCheckpointSize() bytes
+	 */
+	public void writeCheckpoint(ByteBuffer buffer)
+	{
+		buffer.putInt(size);
+		buffer.putInt(nextId);
+		Checkpoint.putInts(buffer, id, size);
+		Checkpoint.putDoubles(buffer, x, size);
+		Checkpoint.putDoubles(buffer, y, size);
+		Checkpoint.putDoubles(buffer, birthX, size);
+		Checkpoint.putDoubles(buffer, birthY, size);
+		Checkpoint.putDoubles(buffer, direction, size);
+		Checkpoint.putDoubles(buffer, speed, size);
+		Checkpoint.putDoubles(buffer, age, size);
+		//the day counters as they are now, the same as when they were added to every update
+		double[] days = new double[size];
+		for(int i = 0; i < size; i++)
+		{
+			days[i] = getDaysSinceOvipos(i);
+		}
+		Checkpoint.putDoubles(buffer, days, size);
+		for(int i = 0; i < size; i++)
+		{
+			days[i] = getNumDaysCarryingEggs(i);
+		}
+		Checkpoint.putDoubles(buffer, days, size);
+		//the updates left to live, rather than the update of death, like the day counters
+		int[] updatesLeft = new int[size];
+		for(int i = 0; i < size; i++)
+		{
+			updatesLeft[i] = deathUpdate[i] == NOT_DRAWN ? NOT_DRAWN : deathUpdate[i] - updateCount;
+		}
+		Checkpoint.putInts(buffer, updatesLeft, size);
+		buffer.put(numTimesMated, 0, size);
+		buffer.put(traits, 0, size);
+		buffer.put(animationPhase, 0, size);
+	}
+
+	/**
+	 * Replaces every mosquito with those in a checkpoint written by writeCheckpoint
+	 * @param buffer Where to read from
+	 */
+	public void readCheckpoint(ByteBuffer buffer)
+	{
+		int n = buffer.getInt();
+		if(n < 0 || n > buffer.remaining())
+		{
+			throw new IllegalStateException("Bad population size " + n);
+		}
+		ensureCapacity(n);
+		size = n;
+		nextId = buffer.getInt();
+		Checkpoint.getInts(buffer, id, size);
+		Checkpoint.getDoubles(buffer, x, size);
+		Checkpoint.getDoubles(buffer, y, size);
+		Checkpoint.getDoubles(buffer, birthX, size);
+		Checkpoint.getDoubles(buffer, birthY, size);
+		Checkpoint.getDoubles(buffer, direction, size);
+		Checkpoint.getDoubles(buffer, speed, size);
+		Checkpoint.getDoubles(buffer, age, size);
+		Checkpoint.getDoubles(buffer, daysSinceOvipos, size);
+		Checkpoint.getDoubles(buffer, numDaysCarryingEggs, size);
+		Checkpoint.getInts(buffer, deathUpdate, size);
+		buffer.get(numTimesMated, 0, size);
+		buffer.get(traits, 0, size);
+		buffer.get(animationPhase, 0, size);
+		Arrays.fill(groupCounts, 0);
+		deposits.clear();
+		for(int i = 0; i < size; i++)
+		{
+			traits[i] &= ~READY_TO_DEPOSIT;
+			groupCounts[traits[i] & GROUP_MASK]++;
+			setDaysSinceOvipos(i, daysSinceOvipos[i]);
+			setNumDaysCarryingEggs(i, numDaysCarryingEggs[i]);
+			if(deathUpdate[i] != NOT_DRAWN)
+			{
+				deathUpdate[i] = (int)Math.min(Integer.MAX_VALUE, (long)updateCount + deathUpdate[i]);
+			}
+		}
+	}
+
+	private void setDaysSinceOvipos(int i, double days)
+	{
+		daysSinceOvipos[i] = days;
+		oviposUpdate[i] = updateCount;
+		//she is checked after the adult phase, so by then every update up to this one has aged her
+		fertileUpdate[i] = updateCount + UpdateClock.updatesUntilAbove(days, Mosquito.DAYS_UNTIL_FERTILE_AFTER_OVIPOS);
+	}
+
+	/**
+	 * Sets the days a mosquito has carried eggs, and if she is carrying them, schedules
+	 * the update in which she lays them
+	 */
+	private void setNumDaysCarryingEggs(int i, double days)
+	{
+		numDaysCarryingEggs[i] = days;
+		eggsUpdate[i] = updateCount;
+		if(isFemale(i) && carryingEggs(i))
+		{
+			//she is first checked in the next adult phase, after it has aged her
+			deposits.scheduleIn(Math.max(1, UpdateClock.updatesUntilAbove(days, Mosquito.NUM_DAYS_UNTIL_EGG_DEPOSIT)), id[i]);
+		}
+	}
+
+	/**
+	 * Starts the adult phase of an update: flags the females due to lay their eggs in it.
+	 * Call once per update, before the first call to update(i, random).
+	 */
+	public void nextUpdate()
+	{
+		updateCount++;
+		dueDeposits.clear();
+		deposits.advance(dueDeposits);
+		for(int k = 0; k < dueDeposits.size(); k++)
+		{
+			int i = indexOf(dueDeposits.get(k));
+			if(i >= 0)
+			{
+				traits[i] |= READY_TO_DEPOSIT;
+			}
+		}
+	}
+
+	/**
+	 * @param mosquitoId The id of a mosquito
+	 * @return Its index, or a negative number if it has been removed
+	 */
+	public int indexOf(int mosquitoId)
+	{
+		return Arrays.binarySearch(id, 0, size, mosquitoId);
+	}
+
+	/**
+	 * Updates mosquito i based on a 30fps simulation: moves it, ages it, keeps it
+	 * near its birth location, and applies mortality (see Actor.update and Mosquito.update)
+	 * @param i The index
+	 * @param random The simulation's random number stream
+	 */
+	public void update(int i, RandomSource random)
+	{
+		x[i] += speed[i] * Math.cos(direction[i]);
+		y[i] += speed[i] * Math.sin(direction[i]);
+		age[i] += 1/30d;
+		bounceBoundRadius(i, getBoundRadius(i), random);
+		if(deathUpdate[i] == NOT_DRAWN)
+		{
+			//the first update it could die in is this one
+			long updatesLeft = Math.min(random.nextGeometric(Mosquito.MORTALITY_PROB), Integer.MAX_VALUE);
+			deathUpdate[i] = (int)Math.min(Integer.MAX_VALUE, updateCount - 1 + updatesLeft);
+		}
+		if(deathUpdate[i] == updateCount)
+		{
+			kill(i);
+		}
+	}
+
+	/**
+	 * Bounces if the mosquito touches/passes the boundary of how far from its birth location it
+	 * is permitted to travel (see Actor.bounceWalls)
+	 */
+	private void bounceBoundRadius(int i, double boundRadius, RandomSource random)
+	{
+		double limit = boundRadius - 2 * radius;
+		if(distanceToBirth(i) > limit)
+		{
+			while(distanceToBirth(i) > limit)
+			{
+				double toBirth = Position.getDirection(x[i], y[i], birthX[i], birthY[i]);
+				x[i] += Math.cos(toBirth);
+				y[i] += Math.sin(toBirth);
+			}
+			double angle = Position.getDirection(x[i], y[i], birthX[i], birthY[i]);
+			angle +=  Math.PI/2 - random.nextDouble() * Math.PI;
+			direction[i] = angle;
+		}
+	}
+
+	private double distanceToBirth(int i)
+	{
+		double dx = x[i] - birthX[i];
+		double dy = y[i] - birthY[i];
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Moves mosquito i away from a wall it is overlapping/passing, then
+	 * sets its velocity to bounce elastically (see Actor.bounceWalls)
+	 * @param i The index
+	 * @param width The width of the simulation
+	 * @param height The height of the simulation
+	 */
+	public void bounceWalls(int i, int width, int height)
+	{
+		if(x[i] - radius < 0)
+		{
+			while(x[i] - radius < 0)
+			{
+				x[i] += 1;
+			}
+			direction[i] = Math.PI - direction[i];
+		}
+		if(x[i] + radius > width)
+		{
+			while(x[i] + radius > width)
+			{
+				x[i] -= 1;
+			}
+			direction[i] = Math.PI - direction[i];
+		}
+		if(y[i] - radius < 0)
+		{
+			while(y[i] - radius < 0)
+			{
+				y[i] += 1;
+			}
+			direction[i] = 2*Math.PI - direction[i];
+		}
+		if(y[i] + radius > height)
+		{
+			while(y[i] + radius > height)
+			{
+				y[i] -= 1;
+			}
+			direction[i] = 2*Math.PI - direction[i];
+		}
+	}
+
+	/**
+	 * @return Whether mosquitoes i and j are touching
+	 */
+	public boolean isTouching(int i, int j)
+	{
+		double dx = x[i] - x[j];
+		double dy = y[i] - y[j];
+		return Math.sqrt(dx * dx + dy * dy) < 2 * radius;
+	}
+
+	/**
+	 * The same conditions as Mosquito.isFertile
+	 * @param i The index
+	 * @return Whether mosquito i is able to mate
+	 */
+	public boolean isFertile(int i)
+	{
+		if(isFemale(i))
+		{
+			return updateCount >= fertileUpdate[i]
+					&& !carryingEggs(i)
+					&& age[i] > Mosquito.FEMALE_DAYS_UNTIL_FERTILE
+					&& numTimesMated[i] < Mosquito.NUM_TIMES_FEMALE_CAN_MATE;
+		}
+		return numTimesMated[i] < Mosquito.NUM_TIMES_MALE_CAN_MATE
+				&& age[i] > Mosquito.MALE_DAYS_UNTIL_FERTILE;
+	}
+
+	/**
+	 * Mates a female with a male
+	 * @param female Index of the female
+	 * @param male Index of the male
+	 */
+	public void mate(int female, int male)
+	{
+		numTimesMated[female]++;
+		numTimesMated[male]++;
+		traits[female] = (byte)((traits[female] & ~(GENOTYPE_MASK << MATE_GENOTYPE_SHIFT))
+				| CARRYING_EGGS | getGenotype(male).ordinal() << MATE_GENOTYPE_SHIFT);
+		setNumDaysCarryingEggs(female, 0);
+	}
+
+	/**
+	 * @return Whether female i has carried her eggs long enough to deposit them
+	 */
+	public boolean isReadyToDeposit(int i)
+	{
+		return (traits[i] & READY_TO_DEPOSIT) != 0;
+	}
+
+	public void removeEggs(int i)
+	{
+		traits[i] &= ~(CARRYING_EGGS | READY_TO_DEPOSIT);
+		setNumDaysCarryingEggs(i, 0);
+		setDaysSinceOvipos(i, 0);
+	}
+
+	public void kill(int i)
+	{
+		traits[i] |= DEAD;
+	}
+
+	/**
+	 * Gets the save state of mosquito i, in the same format as Mosquito.getInfo
+	 * @param i The index
+	 * @return a string representation of the save state
+	 */
+	public String getInfo(int i)
+	{
+		return "" + radius + " " + speed[i] + " " + x[i] + " " + y[i] + " " + birthX[i] + " " + birthY[i] + " " + age[i]
+				+ " " + (isFemale(i) ? 1 : 0) + " " + (2 - getGenotype(i).ordinal()) + " " + direction[i]
+				+ " " + getDaysSinceOvipos(i) + " " + numTimesMated[i] + " " + getNumDaysCarryingEggs(i)
+				+ " " + carryingEggs(i) + " " + (2 - getGenotypeMate(i).ordinal());
+	}
+
+	/**
+	 * Finds every pair of touching mosquitoes
+	 * @param grid The grid to search with, which keeps the pairs it finds
+	 * @return The number of pairs found
+	 */
+	public int findCollisions(CollisionGrid grid)
+	{
+		return grid.findPairs(x, y, size);
+	}
+
+	//getters
+
+	public int size()
+	{
+		return size;
+	}
+	public double getRadius()
+	{
+		return radius;
+	}
+	/**
+	 * @return An id which, unlike the index, stays with the mosquito until it dies
+	 */
+	public int getId(int i)
+	{
+		return id[i];
+	}
+	public double getX(int i)
+	{
+		return x[i];
+	}
+	public double getY(int i)
+	{
+		return y[i];
+	}
+	public double getBirthX(int i)
+	{
+		return birthX[i];
+	}
+	public double getBirthY(int i)
+	{
+		return birthY[i];
+	}
+	public double getDirection(int i)
+	{
+		return direction[i];
+	}
+	public double getSpeed(int i)
+	{
+		return speed[i];
+	}
+	public double getAge(int i)
+	{
+		return age[i];
+	}
+	public void setAge(int i, double age)
+	{
+		this.age[i] = age;
+	}
+	/**
+	 * @return The radius of the max distance from its birth location mosquito i can travel
+	 */
+	public double getBoundRadius(int i)
+	{
+		return 33 * age[i] + 30;
+	}
+	public double getDaysSinceOvipos(int i)
+	{
+		return isFemale(i) ? UpdateClock.advance(daysSinceOvipos[i], updateCount - oviposUpdate[i]) : daysSinceOvipos[i];
+	}
+	public double getNumDaysCarryingEggs(int i)
+	{
+		return isFemale(i) && carryingEggs(i) ? UpdateClock.advance(numDaysCarryingEggs[i], updateCount - eggsUpdate[i])
+				: numDaysCarryingEggs[i];
+	}
+	public int getNumTimesMated(int i)
+	{
+		return numTimesMated[i];
+	}
+	public boolean isFemale(int i)
+	{
+		return (traits[i] & FEMALE) != 0;
+	}
+	public Gender getGender(int i)
+	{
+		return isFemale(i) ? Gender.FEMALE : Gender.MALE;
+	}
+	public Genotype getGenotype(int i)
+	{
+		return GENOTYPES[traits[i] >> GENOTYPE_SHIFT & GENOTYPE_MASK];
+	}
+	public Genotype getGenotypeMate(int i)
+	{
+		return GENOTYPES[traits[i] >> MATE_GENOTYPE_SHIFT & GENOTYPE_MASK];
+	}
+	public boolean carryingEggs(int i)
+	{
+		return (traits[i] & CARRYING_EGGS) != 0;
+	}
+	/**
+	 * @return The offset of mosquito i into its sprite animation (see SpriteSheet.drawSprite)
+	 */
+	public byte getAnimationPhase(int i)
+	{
+		return animationPhase[i];
+	}
+
+	public boolean isAlive(int i)
+	{
+		return (traits[i] & DEAD) == 0;
+	}
+
+	/**
+	 * @return The number of mosquitoes of a gender and genotype
+	 */
+	public int getNum(Gender gender, Genotype genotype)
+	{
+		return groupCounts[(gender == Gender.FEMALE ? FEMALE : 0) | genotype.ordinal() << GENOTYPE_SHIFT];
+	}
+	/**
+	 * @return The number of mosquitoes of a gender
+	 */
+	public int getNum(Gender gender)
+	{
+		int n = 0;
+		for(Genotype genotype: GENOTYPES)
+		{
+			n += getNum(gender, genotype);
+		}
+		return n;
+	}
+	/**
+	 * @return The number of mosquitoes of a genotype
+	 */
+	public int getNum(Genotype genotype)
+	{
+		return getNum(Gender.MALE, genotype) + getNum(Gender.FEMALE, genotype);
+	}
+}
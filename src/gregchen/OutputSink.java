@@ -0,0 +1,82 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Somewhere to write the population time series of a run. A sink writes each row
+ * out as it goes (through a fixed-size buffer), so a run of any length can be recorded
+ * without its output piling up in memory. See {@link TimeSeriesRecorder} for choosing
+ * which updates become rows.
+ * @author Greg
+ *
+ */
+public interface OutputSink extends Closeable
+{
+	public static final String[] COLUMNS = {"Day", "Total Population", "Male Population", "Female Population", "FF", "Ff", "ff"};
+
+	/**
+	 * Writes one row
+	 * @param day The simulation day
+	 * @param total The number of adult mosquitoes
+	 * @param males The number of males
+	 * @param females The number of females
+	 * @param numFF The number of FF mosquitoes
+	 * @param numFf The number of Ff mosquitoes
+	 * @param numff The number of ff mosquitoes
+	 * @throws IOException If the row could not be written
+	 */
+	public void write(double day, int total, int males, int females, int numFF, int numFf, int numff) throws IOException;
+
+	/**
+	 * Pushes any buffered rows to the underlying file
+	 * @throws IOException If they could not be written
+	 */
+	public void flush() throws IOException;
+
+	/**
+	 * Opens a sink for a file, choosing the format by its extension: .csv and .txt/.tsv for
+	 * delimited text, .bin for the binary columnar format and .xls for an Excel workbook
+	 * @param file The file to write
+	 * @param description A line describing the run, written at the top of the file
+	 * @return The sink
+	 * @throws IOException If the file could not be opened
+	 */
+	public static OutputSink open(File file, String description) throws IOException
+	{
+		String name = file.getName().toLowerCase();
+		if(name.endsWith(".csv"))
+		{
+			return new DelimitedSink(file, ',', description);
+		}
+		else if(name.endsWith(".bin"))
+		{
+			return new ColumnarSink(file, description);
+		}
+		else if(name.endsWith(".xls"))
+		{
+			return new ExcelSink(file, description);
+		}
+		return new DelimitedSink(file, '\t', description);
+	}
+}
@@ -0,0 +1,103 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+/**
+ * A summary of one RollingHistogram of durations, shown by JMX clients as a composite value
+ * @author Greg
+ *
+ */
+public class PhaseStatistics
+{
+	private final String name;
+	private final long count;
+	private final double meanNanos;
+	private final long medianNanos, nanos90thPercentile, nanos99thPercentile, maxNanos;
+	private final long totalNanos;
+
+	/**
+	 * @param name The phase
+	 * @param histogram Its durations
+	 */
+	public PhaseStatistics(String name, RollingHistogram histogram)
+	{
+		this.name = name;
+		count = histogram.getCount();
+		totalNanos = histogram.getTotal();
+		long[] window = histogram.getWindow();
+		long sum = 0;
+		for(long sample: window)
+		{
+			sum += sample;
+		}
+		meanNanos = window.length == 0 ? 0 : sum / (double)window.length;
+		medianNanos = RollingHistogram.getPercentile(window, 50);
+		nanos90thPercentile = RollingHistogram.getPercentile(window, 90);
+		nanos99thPercentile = RollingHistogram.getPercentile(window, 99);
+		maxNanos = window.length == 0 ? 0 : window[window.length - 1];
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+	/**
+	 * @return The number of times the phase ever ran
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+	/**
+	 * @return The total time ever spent in the phase
+	 */
+	public long getTotalNanos()
+	{
+		return totalNanos;
+	}
+	//the rest are over the window only
+	public double getMeanNanos()
+	{
+		return meanNanos;
+	}
+	public long getMedianNanos()
+	{
+		return medianNanos;
+	}
+	public long getNanos90thPercentile()
+	{
+		return nanos90thPercentile;
+	}
+	public long getNanos99thPercentile()
+	{
+		return nanos99thPercentile;
+	}
+	public long getMaxNanos()
+	{
+		return maxNanos;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%-10s mean %8.1f us  p50 %8.1f us  p99 %8.1f us  max %8.1f us  total %8.1f ms", name,
+				meanNanos / 1e3, medianNanos / 1e3, nanos99thPercentile / 1e3, maxNanos / 1e3, totalNanos / 1e6);
+	}
+}
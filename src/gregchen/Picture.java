@@ -23,29 +23,28 @@ import java.awt.Graphics;
 import java.awt.geom.AffineTransform;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
-import java.io.File;
+import java.awt.image.DataBufferInt;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.imageio.ImageIO;
 
 /**
  * Class for loading, resizing, tinting picture for backgrounds and spritesheets.
+ * Every image is kept as TYPE_INT_ARGB, so copies and tints work on the int[] behind
+ * its DataBufferInt rather than pixel by pixel.
  * @author Greg
  *
  */
 public class Picture
 {
-	/*
-	private static HashMap<String, BufferedImage> bImageMap = new HashMap<String, BufferedImage>();
-	private static HashMap<String, BufferedImage> bImageResizeMap = new HashMap<String, BufferedImage>();
-	private static HashMap<String, BufferedImage> bImageTintMap = new HashMap<String, BufferedImage>();
+	public static final int MAX_CACHED_IMAGES = 256;
 	
-	*/
-	
-	private static HashMap<String, BufferedImage> bImageMap = new HashMap<String, BufferedImage>();
-	private static HashMap<String, Picture> picMap = new HashMap<String, Picture>();
-	private static HashMap<String, Picture[]> spritesMap = new HashMap<String, Picture[]>();
+	//shared by every simulation in the process (see SweepRunner), so synchronized and bounded
+	private static Map<String, BufferedImage> imageCache = createCache();
+	private static Map<String, Picture[]> spritesCache = createCache();
 	
 	private BufferedImage pic;
 	
@@ -63,22 +62,21 @@ public class Picture
 		this.fileName = fileName;
 		this.color = Color.WHITE;
 		
-		if(bImageMap.containsKey(fileName))
-		{
-			pic = bImageMap.get(fileName);
-			this.imageHeight = pic.getHeight();
-		}
-		else
+		pic = imageCache.get(fileName);
+		if(pic == null)
 		{
 			try
 			{
-				pic = ImageIO.read(this.getClass().getResourceAsStream(fileName));
-				this.imageHeight = pic.getHeight();
-				bImageMap.put(fileName, this.pic);
+				pic = toIntARGB(ImageIO.read(this.getClass().getResourceAsStream(fileName)));
+				imageCache.put(fileName, this.pic);
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		}
+		if(pic != null)
+		{
+			this.imageHeight = pic.getHeight();
+		}
 	}
 	/**
 	 * Constructor for loading an image and setting its fields. Does not actually alter the image.
@@ -97,6 +95,31 @@ public class Picture
 		this.imageHeight = imageHeight;
 	}
 	
+	/**
+	 * Creates a thread-safe map which forgets its least recently used entry once it holds MAX_CACHED_IMAGES
+	 */
+	private static <V> Map<String, V> createCache()
+	{
+		return Collections.synchronizedMap(new LinkedHashMap<String, V>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, V> eldest)
+			{
+				return size() > MAX_CACHED_IMAGES;
+			}
+		});
+	}
+	
+	/**
+	 * The cache key of a derived image. Every lookup and store uses this, so they always agree.
+	 */
+	private static String getKey(String fileName, Color color, int spriteNumber, double imageHeight)
+	{
+		return fileName + " " + color.getRGB() + " " + spriteNumber + " " + Math.round(100 * imageHeight);
+	}
+	
 	public int getWidth()
 	{
 		return pic.getWidth();
@@ -116,20 +139,18 @@ public class Picture
 	 */
 	public Picture getResized(double newHeight)
 	{
-		double scaleFactor = (double)newHeight/pic.getHeight();
-		if(bImageMap.containsKey(fileName + color.getRGB() + spriteNumber + (int)(100*newHeight)))
+		String key = getKey(fileName, color, spriteNumber, newHeight);
+		BufferedImage newPic = imageCache.get(key);
+		if(newPic == null)
 		{
-			return picMap.get(fileName + color.getRGB() + spriteNumber + (int)(100*newHeight));
+			double scaleFactor = (double)newHeight/pic.getHeight();
+			AffineTransform tx = new AffineTransform();
+			tx.scale(scaleFactor, scaleFactor);
+			AffineTransformOp op = new AffineTransformOp(tx, AffineTransformOp.TYPE_BILINEAR);
+			newPic = toIntARGB(op.filter(pic, null));
+			imageCache.put(key, newPic);
 		}
-		
-		AffineTransform tx = new AffineTransform();
-		tx.scale(scaleFactor, scaleFactor);
-		AffineTransformOp op = new AffineTransformOp(tx, AffineTransformOp.TYPE_BILINEAR);
-		BufferedImage newPic = op.filter(pic, null);
-		Picture pict = new Picture(fileName, color, spriteNumber, newHeight, newPic); 
-		picMap.put(fileName + color.getRGB() + "" + imageHeight + "" + spriteNumber, pict);
-	
-		return pict;
+		return new Picture(fileName, color, spriteNumber, newHeight, newPic);
 	}
 	/**
 	 * Splits the image into sprite pieces using the width and the given number of sprites in the sheet
@@ -137,56 +158,62 @@ public class Picture
 	 * @return
 	 */
 	public Picture[] getPieces()
-	{		
-		if(spritesMap.containsKey(fileName + color.getRGB() + (int)(100 * imageHeight)))
-		{
-			return spritesMap.get(fileName + color.getRGB() + (int)(100 * imageHeight)).clone();
-		}
-		
-		BufferedImage picCopy = getDeepCopy(pic);
-		int numPieces = picCopy.getWidth()/picCopy.getHeight();
-		Picture[] pieces = new Picture[numPieces];
-		
-		for(int i = 0; i < numPieces; i++)
+	{
+		String key = getKey(fileName, color, spriteNumber, imageHeight);
+		Picture[] pieces = spritesCache.get(key);
+		if(pieces == null)
 		{
-			pieces[i] = new Picture(this.fileName, this.color, i, this.imageHeight, picCopy.getSubimage(i * picCopy.getWidth()/numPieces, 0, picCopy.getWidth() / numPieces, picCopy.getHeight()));
+			int numPieces = pic.getWidth()/pic.getHeight();
+			int pieceWidth = pic.getWidth() / numPieces;
+			pieces = new Picture[numPieces];
+			for(int i = 0; i < numPieces; i++)
+			{
+				//each piece gets its own compact raster rather than a view into the sheet
+				BufferedImage piece = new BufferedImage(pieceWidth, pic.getHeight(), BufferedImage.TYPE_INT_ARGB);
+				int[] pixels = pic.getRGB(i * pieceWidth, 0, pieceWidth, pic.getHeight(), null, 0, pieceWidth);
+				System.arraycopy(pixels, 0, getData(piece), 0, pixels.length);
+				pieces[i] = new Picture(this.fileName, this.color, i, this.imageHeight, piece);
+			}
+			spritesCache.put(key, pieces);
 		}
-		spritesMap.put(fileName + color.getRGB() + (int)(100 * imageHeight), pieces);
-		
-		return pieces;
+		return pieces.clone();
 	}
 	/**
-	 * Returns a tinted image
+	 * Returns a tinted image: every pixel keeps its saturation, brightness and alpha but takes the hue of color.
+	 * Saturation and brightness only depend on the largest and smallest of a pixel's red, green and blue,
+	 * so the new colours are looked up in a table indexed by those two.
 	 * @param color The new color
 	 * @return The tinted Picture
 	 */
 	public Picture getTinted(Color color) 
 	{
-		
-		if(bImageMap.containsKey(fileName + color.getRGB() + spriteNumber + (int)(100 * imageHeight)))
-		{
-			return new Picture(fileName, color, spriteNumber, imageHeight, bImageMap.get(fileName + color.getRGB() + spriteNumber + (int)(100 * imageHeight)));
-		}
-		BufferedImage newPic = getDeepCopy(pic);
-		for(int y = 0; y < this.getHeight(); y++)
+		String key = getKey(fileName, color, spriteNumber, imageHeight);
+		BufferedImage newPic = imageCache.get(key);
+		if(newPic == null)
 		{
-			for(int x = 0; x < this.getWidth(); x++)
+			float hue = Color.RGBtoHSB(color.getRed(), color.getGreen(), color.getBlue(), null)[0];
+			int[] table = new int[256 * 256]; //0 until computed, since every entry is opaque
+			int[] source = isCompactIntARGB(pic) ? getData(pic) : pic.getRGB(0, 0, getWidth(), getHeight(), null, 0, getWidth());
+			newPic = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_ARGB);
+			int[] target = getData(newPic);
+			for(int i = 0; i < source.length; i++)
 			{
-				int rgbColor = pic.getRGB(x, y);
-				Color prevColor = new Color(rgbColor);
-				
-				int alpha = (rgbColor>>24) & 0xff;
-				
-				float[] hsbColor = Color.RGBtoHSB(prevColor.getRed(), prevColor.getGreen(), prevColor.getBlue(), null);
-				float hue = Color.RGBtoHSB(color.getRed(), color.getGreen(), color.getBlue(), null)[0];
-				int rgb = Color.HSBtoRGB(hue, hsbColor[1], hsbColor[2]);
-				Color newColor = new Color(rgb);
-				newColor = new Color(newColor.getRed(), newColor.getGreen(), newColor.getBlue(), alpha);
-				newPic.setRGB(x, y, newColor.getRGB());
+				int argb = source[i];
+				int red = (argb >> 16) & 0xff;
+				int green = (argb >> 8) & 0xff;
+				int blue = argb & 0xff;
+				int max = Math.max(red, Math.max(green, blue));
+				int min = Math.min(red, Math.min(green, blue));
+				int index = max << 8 | min;
+				if(table[index] == 0)
+				{
+					float[] hsbColor = Color.RGBtoHSB(red, green, blue, null);
+					table[index] = Color.HSBtoRGB(hue, hsbColor[1], hsbColor[2]);
+				}
+				target[i] = (argb & 0xff000000) | (table[index] & 0x00ffffff);
 			}
+			imageCache.put(key, newPic);
 		}
-		bImageMap.put(fileName + color.getRGB() + spriteNumber + (int)(100 * imageHeight), newPic);
-		
 		return new Picture(fileName, color, spriteNumber, this.imageHeight, newPic);
 	}
 	
@@ -196,15 +223,45 @@ public class Picture
 		return "FileName: " + fileName + " RGB Color: " + color.getRGB() + " Image Height: " + imageHeight + " Sprite Number: " + spriteNumber;
 	}
 	
-	private BufferedImage getDeepCopy(BufferedImage image) //NOTE: does not yet implement alpha channel
+	/**
+	 * @return The int[] behind a TYPE_INT_ARGB image
+	 */
+	private static int[] getData(BufferedImage image)
+	{
+		return ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+	}
+	
+	/**
+	 * @return Whether the image is TYPE_INT_ARGB and has its own int[] (i.e. is not a subimage)
+	 */
+	private static boolean isCompactIntARGB(BufferedImage image)
+	{
+		return image.getType() == BufferedImage.TYPE_INT_ARGB
+				&& getData(image).length == image.getWidth() * image.getHeight();
+	}
+	
+	/**
+	 * Returns the image itself if it is already a compact TYPE_INT_ARGB image, otherwise an
+	 * INT_ARGB copy of it made with one bulk read
+	 */
+	private static BufferedImage toIntARGB(BufferedImage image)
+	{
+		return isCompactIntARGB(image) ? image : getDeepCopy(image);
+	}
+	
+	private static BufferedImage getDeepCopy(BufferedImage image)
 	{
-		BufferedImage newBImage = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
-		for(int y = 0; y < image.getHeight(); y++)
+		int width = image.getWidth();
+		int height = image.getHeight();
+		BufferedImage newBImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		if(isCompactIntARGB(image))
 		{
-			for(int x = 0; x < image.getWidth(); x++)
-			{
-				newBImage.setRGB(x, y, image.getRGB(x, y));
-			}
+			int[] data = getData(image);
+			System.arraycopy(data, 0, getData(newBImage), 0, data.length);
+		}
+		else
+		{
+			image.getRGB(0, 0, width, height, getData(newBImage), 0, width);
 		}
 		return newBImage;
 	}
@@ -0,0 +1,202 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A copy of everything needed to draw one update of a simulation: the mosquitoes'
+ * positions, velocities, gender, genotype and animation phase, the breeding sites,
+ * and the population counts. The engine captures one at the end of an update and
+ * hands it over through a {@link SnapshotBuffer}, so a renderer on another thread
+ * never reads the live population. Its arrays only grow, so a snapshot is reused
+ * rather than reallocated every update.
+ * @author Greg
+ *
+ */
+public class PopulationSnapshot
+{
+	private int size = 0;
+	private double radius;
+	private double[] x = new double[0], y = new double[0];
+	private double[] direction = new double[0], speed = new double[0];
+	private double[] age = new double[0];
+	private boolean[] female = new boolean[0];
+	private Genotype[] genotype = new Genotype[0];
+	private byte[] animationPhase = new byte[0];
+
+	private int numSites = 0;
+	private double[] siteX = new double[0], siteY = new double[0];
+	private boolean[] siteFlashing = new boolean[0];
+
+	private int numMales, numFemales, numFF, numFf, numff;
+	private double simulationDay;
+	private long captureTime;
+
+	/**
+	 * Copies the current state of an engine into this snapshot. Only call from the thread updating the engine.
+	 * @param engine The engine
+	 */
+	public void capture(SimulationEngine engine)
+	{
+		MosquitoPopulation population = engine.getPopulation();
+		size = population.size();
+		radius = population.getRadius();
+		if(x.length < size)
+		{
+			int capacity = Math.max(size, 2 * x.length);
+			x = Arrays.copyOf(x, capacity);
+			y = Arrays.copyOf(y, capacity);
+			direction = Arrays.copyOf(direction, capacity);
+			speed = Arrays.copyOf(speed, capacity);
+			age = Arrays.copyOf(age, capacity);
+			female = Arrays.copyOf(female, capacity);
+			genotype = Arrays.copyOf(genotype, capacity);
+			animationPhase = Arrays.copyOf(animationPhase, capacity);
+		}
+		for(int i = 0; i < size; i++)
+		{
+			x[i] = population.getX(i);
+			y[i] = population.getY(i);
+			direction[i] = population.getDirection(i);
+			speed[i] = population.getSpeed(i);
+			age[i] = population.getAge(i);
+			female[i] = population.isFemale(i);
+			genotype[i] = population.getGenotype(i);
+			animationPhase[i] = population.getAnimationPhase(i);
+		}
+
+		ArrayList<BreedingSite> sites = engine.getBreedingSites();
+		numSites = sites.size();
+		if(siteX.length < numSites)
+		{
+			siteX = new double[numSites];
+			siteY = new double[numSites];
+			siteFlashing = new boolean[numSites];
+		}
+		for(int i = 0; i < numSites; i++)
+		{
+			BreedingSite b = sites.get(i);
+			siteX[i] = b.getLocation().x;
+			siteY[i] = b.getLocation().y;
+			siteFlashing[i] = b.isFlashing();
+		}
+
+		numMales = engine.getNumMales();
+		numFemales = engine.getNumFemales();
+		numFF = engine.getNumFF();
+		numFf = engine.getNumFf();
+		numff = engine.getNumff();
+		simulationDay = engine.getSimulationDay();
+		captureTime = System.nanoTime();
+	}
+
+	/**
+	 * @return The number of mosquitoes
+	 */
+	public int size()
+	{
+		return size;
+	}
+	public double getRadius()
+	{
+		return radius;
+	}
+	public double getX(int i)
+	{
+		return x[i];
+	}
+	public double getY(int i)
+	{
+		return y[i];
+	}
+	public double getDirection(int i)
+	{
+		return direction[i];
+	}
+	public double getSpeed(int i)
+	{
+		return speed[i];
+	}
+	public double getAge(int i)
+	{
+		return age[i];
+	}
+	public boolean isFemale(int i)
+	{
+		return female[i];
+	}
+	public Genotype getGenotype(int i)
+	{
+		return genotype[i];
+	}
+	public byte getAnimationPhase(int i)
+	{
+		return animationPhase[i];
+	}
+	public int getNumSites()
+	{
+		return numSites;
+	}
+	public double getSiteX(int i)
+	{
+		return siteX[i];
+	}
+	public double getSiteY(int i)
+	{
+		return siteY[i];
+	}
+	public boolean isSiteFlashing(int i)
+	{
+		return siteFlashing[i];
+	}
+	public int getNumMales()
+	{
+		return numMales;
+	}
+	public int getNumFemales()
+	{
+		return numFemales;
+	}
+	public int getNumFF()
+	{
+		return numFF;
+	}
+	public int getNumFf()
+	{
+		return numFf;
+	}
+	public int getNumff()
+	{
+		return numff;
+	}
+	public double getSimulationDay()
+	{
+		return simulationDay;
+	}
+	/**
+	 * @return The System.nanoTime() at which the snapshot was captured, used to interpolate between updates
+	 */
+	public long getCaptureTime()
+	{
+		return captureTime;
+	}
+}
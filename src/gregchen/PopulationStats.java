@@ -0,0 +1,119 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.util.ArrayList;
+
+/**
+ * A read-only view of an engine's population counts: the adults by gender and genotype,
+ * which MosquitoPopulation keeps up to date as mosquitoes emerge, are released and die,
+ * and the eggs, larvae and pupae in each breeding site, which each site keeps itself.
+ * Every query is a lookup (or a sum over the breeding sites), never a scan of the
+ * population, so observers and output sinks can ask as often as they like.
+ * <p>
+ * The view always shows the engine's current state, so only read it from the thread
+ * updating the engine; other threads should read a PopulationSnapshot.
+ * @author Greg
+ *
+ */
+public class PopulationStats
+{
+	private final SimulationEngine engine;
+
+	/**
+	 * @param engine The engine to view
+	 */
+	public PopulationStats(SimulationEngine engine)
+	{
+		this.engine = engine;
+	}
+
+	public double getSimulationDay()
+	{
+		return engine.getSimulationDay();
+	}
+	/**
+	 * @return The number of adult mosquitoes
+	 */
+	public int getNumAdults()
+	{
+		return engine.getPopulation().size();
+	}
+	public int getNumMales()
+	{
+		return engine.getPopulation().getNum(Gender.MALE);
+	}
+	public int getNumFemales()
+	{
+		return engine.getPopulation().getNum(Gender.FEMALE);
+	}
+	/**
+	 * @return The number of adults of a genotype
+	 */
+	public int getNum(Genotype genotype)
+	{
+		return engine.getPopulation().getNum(genotype);
+	}
+	/**
+	 * @return The number of adults of a gender and genotype
+	 */
+	public int getNum(Gender gender, Genotype genotype)
+	{
+		return engine.getPopulation().getNum(gender, genotype);
+	}
+	public int getNumFF()
+	{
+		return getNum(Genotype.FF);
+	}
+	public int getNumFf()
+	{
+		return getNum(Genotype.Ff);
+	}
+	public int getNumff()
+	{
+		return getNum(Genotype.ff);
+	}
+
+	public int getNumSites()
+	{
+		return engine.getBreedingSites().size();
+	}
+	/**
+	 * @param site The index of a breeding site, as in SimulationEngine.getBreedingSites()
+	 * @return The number of eggs, larvae and pupae in it
+	 */
+	public int getNumAquatic(int site)
+	{
+		return engine.getBreedingSites().get(site).getNumPupae();
+	}
+	/**
+	 * @return The number of eggs, larvae and pupae in all breeding sites
+	 */
+	public int getNumAquatic()
+	{
+		ArrayList<BreedingSite> sites = engine.getBreedingSites();
+		int n = 0;
+		for(int i = 0; i < sites.size(); i++)
+		{
+			n += sites.get(i).getNumPupae();
+		}
+		return n;
+	}
+}
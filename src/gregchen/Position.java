@@ -19,7 +19,6 @@
 
 package gregchen;
 import java.awt.Point;
-import java.util.Random;
 
 /**
  * Class for custom Position object with a few helpful methods
@@ -30,7 +29,6 @@ public class Position
 {
 	public double x;
 	public double y;
-	private static Random random = new Random();
 	
 	public Position() {}
 	
@@ -67,6 +65,22 @@ public class Position
 			return wrapAngle(Math.PI - Math.asin(deltaY/getDistance(otherPos)));
 		}
 	}
+	/**
+	 * The same as getDirectionTo, for callers which keep their coordinates in arrays
+	 * @return The direction from (x, y) to (otherX, otherY) in radians
+	 */
+	public static double getDirection(double x, double y, double otherX, double otherY)
+	{
+		double distance = Math.sqrt((x - otherX) * (x - otherX) + (y - otherY) * (y - otherY));
+		if(x <= otherX)
+		{
+			return Calc.wrapAngle(Math.asin((otherY - y)/distance));
+		}
+		else
+		{
+			return Calc.wrapAngle(Math.PI - Math.asin((otherY - y)/distance));
+		}
+	}
 	private double wrapAngle(double angle)
 	{
 		if(angle >= 0 && angle <= 2*Math.PI)
@@ -80,11 +94,11 @@ public class Position
 		return wrapAngle(angle - 2*Math.PI);
 	}
 	
-	public static Position getRandomPosition(double xMax, double yMax)
+	public static Position getRandomPosition(double xMax, double yMax, RandomSource random)
 	{
-		return getRandomPosition(0, 0, xMax, yMax);
+		return getRandomPosition(0, 0, xMax, yMax, random);
 	}
-	public static Position getRandomPosition(double xMin, double yMin, double xMax, double yMax)
+	public static Position getRandomPosition(double xMin, double yMin, double xMax, double yMax, RandomSource random)
 	{
 		return new Position(xMin + random.nextDouble() * (xMax - xMin), yMin + random.nextDouble() * (yMax - yMin));
 	}
@@ -18,8 +18,6 @@
 
 
 package gregchen;
-import java.util.Random;
-import java.util.Scanner;
 
 
 public class Pupa 
@@ -28,20 +26,23 @@ public class Pupa
 	public static double DAYS_TO_STAGE_LATE = 3.3;
 	public static double DAYS_TO_STAGE_FINAL = 7.2;
 	
-	private double age = 0;
+	private double age = 0; //as of update ageUpdate of its breeding site
+	private long ageUpdate = 0;
 	private boolean isAlive = true;
+	private boolean emerged = false;
 	private Genotype genotype;
 	private Gender gender;
 	private Position birthLocation;
 	public enum Stage{EARLY, LATE, FINAL};
 	private Stage stage;
 	private double larvalTime;
-	private double densityDependentMortalityProb = 0;
-	Random random = new Random();
+	//set by its breeding site, in its updates
+	private long deathUpdate = -1;
+	private long emergenceUpdate, stageUpdate;
+	private long sequence; //order in which it was added to the site
 	
-	public Pupa(Genotype genotype, Position birthLocation)
+	public Pupa(Genotype genotype, Position birthLocation, RandomSource random)
 	{
-		Random random = new Random();
 		this.genotype = genotype;
 		this.birthLocation = birthLocation;
 		larvalTime = DAYS_TO_ADULTHOOD + 3.0 * random.nextDouble() - 1.5;
@@ -54,7 +55,7 @@ public class Pupa
 			this.gender = Gender.MALE;
 		}	
 	}
-	public Pupa(Genotype genotype, Gender gender, Position birthLocation, double age)
+	public Pupa(Genotype genotype, Gender gender, Position birthLocation, double age, RandomSource random)
 	{
 		this.genotype = genotype;
 		this.birthLocation = birthLocation;
@@ -62,6 +63,38 @@ public class Pupa
 		this.gender = gender;
 		this.age = age;
 	}
+	/**
+	 * Constructor for a pupa whose larval time is already known, e.g. one read from a checkpoint
+	 */
+	public Pupa(Genotype genotype, Gender gender, Position birthLocation, double age, double larvalTime)
+	{
+		this.genotype = genotype;
+		this.gender = gender;
+		this.birthLocation = birthLocation;
+		this.age = age;
+		this.larvalTime = larvalTime;
+	}
+	/**
+	 * Copy constructor, e.g. for forking a simulation
+	 * @param other The pupa to copy
+	 * @param birthLocation The copy's birth location
+	 */
+	public Pupa(Pupa other, Position birthLocation)
+	{
+		this.age = other.age;
+		this.ageUpdate = other.ageUpdate;
+		this.isAlive = other.isAlive;
+		this.emerged = other.emerged;
+		this.genotype = other.genotype;
+		this.gender = other.gender;
+		this.birthLocation = birthLocation;
+		this.stage = other.stage;
+		this.larvalTime = other.larvalTime;
+		this.deathUpdate = other.deathUpdate;
+		this.emergenceUpdate = other.emergenceUpdate;
+		this.stageUpdate = other.stageUpdate;
+		this.sequence = other.sequence;
+	}
 	public Pupa(String info)
 	{
 		int cursor = 0;
@@ -98,38 +131,38 @@ public class Pupa
 		}
 	
 	}
-	public Pupa(Genotype genotype, Position birthLocation, Boolean randomizeAge)
+	public Pupa(Genotype genotype, Position birthLocation, Boolean randomizeAge, RandomSource random)
 	{
-		this(genotype, birthLocation);
-		Random random = new Random();
+		this(genotype, birthLocation, random);
 		this.age = 9.6 * random.nextDouble();
 	}
 	
-	public void update()
+	/**
+	 * @return The stage of a pupa of a given age
+	 */
+	public static Stage getStageAtAge(double age)
 	{
-		if(random.nextDouble() < this.densityDependentMortalityProb)
-		{
-			//System.out.println("Kill!");
-			this.kill();
-		}
-		age += 1/30d;
 		if(age < DAYS_TO_STAGE_LATE)
 		{
-			stage = Stage.EARLY;
+			return Stage.EARLY;
 		}
 		else if(age < DAYS_TO_STAGE_FINAL)
 		{
-			stage = Stage.LATE;
+			return Stage.LATE;
 		}
 		else //therefore age >= DAYS_TO_STAGE_FINAL
 		{
-			stage = Stage.FINAL;
+			return Stage.FINAL;
 		}
 	}
 	public Stage getStage()
 	{
 		return this.stage;
 	}
+	public void setStage(Stage stage)
+	{
+		this.stage = stage;
+	}
 	public double getLarvalTime()
 	{
 		return larvalTime;
@@ -138,9 +171,58 @@ public class Pupa
 	{
 		isAlive = false;
 	}
-	public void setDensityDependentMortalityProb(double prob)
+	/**
+	 * Marks the pupa as having left its breeding site as an adult
+	 */
+	public void emerge()
+	{
+		emerged = true;
+	}
+	public boolean hasEmerged()
+	{
+		return emerged;
+	}
+	/**
+	 * @return The update of its breeding site in which it dies of density-independent
+	 * mortality, or a negative number if that has not been drawn yet
+	 */
+	public long getDeathUpdate()
+	{
+		return deathUpdate;
+	}
+	public void setDeathUpdate(long update)
 	{
-		this.densityDependentMortalityProb = prob;
+		this.deathUpdate = update;
+	}
+	/**
+	 * @return The update of its breeding site in which it emerges
+	 */
+	public long getEmergenceUpdate()
+	{
+		return emergenceUpdate;
+	}
+	public void setEmergenceUpdate(long update)
+	{
+		this.emergenceUpdate = update;
+	}
+	/**
+	 * @return The update of its breeding site in which it moves on to the next stage, if it is not FINAL yet
+	 */
+	public long getStageUpdate()
+	{
+		return stageUpdate;
+	}
+	public void setStageUpdate(long update)
+	{
+		this.stageUpdate = update;
+	}
+	public long getSequence()
+	{
+		return sequence;
+	}
+	public void setSequence(long sequence)
+	{
+		this.sequence = sequence;
 	}
 	public Position getBirthLocation()
 	{
@@ -158,8 +240,31 @@ public class Pupa
 	{
 		return gender;
 	}
+	/**
+	 * @return The age it was given, or had when it was last added to a breeding site
+	 */
 	public double getAge()
 	{
 		return age;
 	}
+	/**
+	 * @param update An update of its breeding site, not before getAgeUpdate()
+	 * @return Its age in that update, aged the same way as every other counter (see UpdateClock)
+	 */
+	public double getAge(long update)
+	{
+		return UpdateClock.advance(age, update - ageUpdate);
+	}
+	/**
+	 * @return The update of its breeding site at which getAge() was its age
+	 */
+	public long getAgeUpdate()
+	{
+		return ageUpdate;
+	}
+	public void setAge(double age, long update)
+	{
+		this.age = age;
+		this.ageUpdate = update;
+	}
 }
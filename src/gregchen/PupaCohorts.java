@@ -0,0 +1,417 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An aggregated version of a breeding site's pupae. Instead of one Pupa object each,
+ * it keeps the number of pupae of every (age in updates, gender, genotype) in a ring
+ * buffer, so ageing everything by one update is just moving the head of the ring.
+ * <p>
+ * The per-update rules are drawn so that the counts follow the same distribution
+ * as the per-object model in BreedingSite:
+ * <ul>
+ * <li>density-independent mortality thins every cohort binomially, in one pass over
+ * the whole site which skips from one death to the next,</li>
+ * <li>the carrying-capacity cull kills uniformly chosen pupae in the FINAL stage
+ * until at most CC_FINAL are left,</li>
+ * <li>emergence thins every cohort by the hazard of the uniform larval time
+ * (DAYS_TO_ADULTHOOD +/- 1.5 days) ending during that update.</li>
+ * </ul>
+ * Memory and CPU cost depend on the number of ages, not on the number of pupae.
+ * @author Greg
+ *
+ */
+public class PupaCohorts
+{
+	public static final double LARVAL_TIME_SPREAD = 1.5;
+	private static final int GROUPS = 2 * Genotype.values().length; //gender * genotype
+	private static final Genotype[] GENOTYPES = Genotype.values();
+
+	private final int ages; //number of ages in the ring, 0 to ages - 1 updates old
+	private final int finalAge; //first age (in updates) of the FINAL stage
+	private final double[] emergenceHazard;
+	private final double minLarvalTime, maxLarvalTime;
+
+	private final int[] counts; //counts[slot * GROUPS + group]
+	private final int[] ready = new int[GROUPS]; //pupae added past their larval time, which emerge next
+	private int head = 0; //slot holding age 0
+	private int total = 0;
+
+	public PupaCohorts()
+	{
+		minLarvalTime = Pupa.DAYS_TO_ADULTHOOD - LARVAL_TIME_SPREAD;
+		maxLarvalTime = Pupa.DAYS_TO_ADULTHOOD + LARVAL_TIME_SPREAD;
+		ages = (int)Math.ceil(maxLarvalTime * SimulationEngine.UPDATES_PER_DAY) + 1;
+		finalAge = (int)Math.ceil(Pupa.DAYS_TO_STAGE_FINAL * SimulationEngine.UPDATES_PER_DAY - 1e-9);
+		counts = new int[ages * GROUPS];
+
+		//hazard of emerging at age t given not emerged at age t - 1: the per-object
+		//model emerges once age > larvalTime, with larvalTime uniform
+		emergenceHazard = new double[ages];
+		for(int t = 1; t < ages; t++)
+		{
+			double before = getLarvalTimeCDF((t - 1) / (double)SimulationEngine.UPDATES_PER_DAY);
+			double now = getLarvalTimeCDF(t / (double)SimulationEngine.UPDATES_PER_DAY);
+			emergenceHazard[t] = before >= 1 ? 1 : (now - before) / (1 - before);
+		}
+		emergenceHazard[ages - 1] = 1;
+	}
+
+	/**
+	 * Copy constructor, e.g. for forking a simulation. The counts are cloned, the
+	 * precomputed hazards are shared.
+	 * @param other The cohorts to copy
+	 */
+	public PupaCohorts(PupaCohorts other)
+	{
+		ages = other.ages;
+		finalAge = other.finalAge;
+		emergenceHazard = other.emergenceHazard;
+		minLarvalTime = other.minLarvalTime;
+		maxLarvalTime = other.maxLarvalTime;
+		counts = other.counts.clone();
+		System.arraycopy(other.ready, 0, ready, 0, GROUPS);
+		head = other.head;
+		total = other.total;
+	}
+
+	private double getLarvalTimeCDF(double days)
+	{
+		return Math.min(1, Math.max(0, (days - minLarvalTime) / (maxLarvalTime - minLarvalTime)));
+	}
+
+	private static int getGroup(Gender gender, Genotype genotype)
+	{
+		return (gender == Gender.FEMALE ? GENOTYPES.length : 0) + genotype.ordinal();
+	}
+
+	private int getSlot(int age)
+	{
+		return (head + age) % ages;
+	}
+
+	/**
+	 * Adds a pupa of a given age
+	 * @param gender Its gender
+	 * @param genotype Its genotype
+	 * @param age Its age in updates
+	 */
+	public void add(Gender gender, Genotype genotype, int age)
+	{
+		age = Math.min(Math.max(age, 0), ages - 2);
+		counts[getSlot(age) * GROUPS + getGroup(gender, genotype)]++;
+		total++;
+	}
+
+	/**
+	 * Adds a stand-alone pupa (e.g. from a save or the initial fill). Its larval time
+	 * is only used to decide whether it is already due to emerge.
+	 * @param pupa The pupa
+	 */
+	public void add(Pupa pupa)
+	{
+		if(pupa.getAge() > pupa.getLarvalTime())
+		{
+			ready[getGroup(pupa.getGender(), pupa.getGenotype())]++;
+			total++;
+		}
+		else
+		{
+			add(pupa.getGender(), pupa.getGenotype(), (int)Math.round(pupa.getAge() * SimulationEngine.UPDATES_PER_DAY));
+		}
+	}
+
+	/**
+	 * Ages every pupa by one update, then applies density-independent mortality.
+	 * The carrying-capacity cull follows, see cull.
+	 * @param mortalityProb Probability of each pupa dying this update
+	 * @param random The site's random number stream
+	 */
+	public void update(double mortalityProb, RandomSource random)
+	{
+		//the oldest slot is always emptied by emergence, so it becomes the new age 0
+		head = (head + ages - 1) % ages;
+		Arrays.fill(counts, head * GROUPS, head * GROUPS + GROUPS, 0);
+
+		//the pupae are lined up cohort after cohort, and the gaps between deaths are geometric,
+		//so the draws grow with the number of deaths rather than with the number of cohorts
+		long next = random.nextGeometric(mortalityProb) - 1;
+		next = thin(counts, next, mortalityProb, random);
+		thin(ready, next, mortalityProb, random);
+	}
+
+	/**
+	 * Kills pupae in a run of cohorts
+	 * @param cohorts The counts to thin
+	 * @param next The position of the next pupa to die, counting from the first pupa of the first cohort
+	 * @return The position of the next pupa to die, counting from the first pupa after these cohorts
+	 */
+	private long thin(int[] cohorts, long next, double mortalityProb, RandomSource random)
+	{
+		for(int i = 0; i < cohorts.length; i++)
+		{
+			int deaths = 0;
+			while(next < cohorts[i])
+			{
+				deaths++;
+				next += random.nextGeometric(mortalityProb);
+			}
+			next -= cohorts[i];
+			cohorts[i] -= deaths;
+			total -= deaths;
+		}
+		return next;
+	}
+
+	/**
+	 * Kills uniformly chosen pupae in the FINAL stage until at most carryingCapacity are left
+	 * @param carryingCapacity The most pupae allowed in the FINAL stage
+	 * @param random The site's random number stream
+	 * @return The number killed
+	 */
+	public int cull(int carryingCapacity, RandomSource random)
+	{
+		int finals = getNumFinal();
+		int killed = 0;
+		while(finals > carryingCapacity)
+		{
+			killFinal(random.nextInt(finals));
+			finals--;
+			total--;
+			killed++;
+		}
+		return killed;
+	}
+
+	/**
+	 * @return The number of pupae in the FINAL stage
+	 */
+	public int getNumFinal()
+	{
+		int finals = 0;
+		for(int age = finalAge; age < ages; age++)
+		{
+			int slot = getSlot(age) * GROUPS;
+			for(int g = 0; g < GROUPS; g++)
+			{
+				finals += counts[slot + g];
+			}
+		}
+		for(int g = 0; g < GROUPS; g++)
+		{
+			finals += ready[g];
+		}
+		return finals;
+	}
+
+	//kills the n-th FINAL stage pupa
+	private void killFinal(int n)
+	{
+		for(int age = finalAge; age < ages; age++)
+		{
+			int slot = getSlot(age) * GROUPS;
+			for(int g = 0; g < GROUPS; g++)
+			{
+				if(n < counts[slot + g])
+				{
+					counts[slot + g]--;
+					return;
+				}
+				n -= counts[slot + g];
+			}
+		}
+		for(int g = 0; g < GROUPS; g++)
+		{
+			if(n < ready[g])
+			{
+				ready[g]--;
+				return;
+			}
+			n -= ready[g];
+		}
+	}
+
+	/**
+	 * Removes the pupae which emerge this update
+	 * @param emerged Filled with the number of emerging pupae of each gender and genotype,
+	 * indexed by gender (male first) * 3 + genotype ordinal
+	 * @param random The site's random number stream
+	 */
+	public void emerge(int[] emerged, RandomSource random)
+	{
+		for(int g = 0; g < GROUPS; g++)
+		{
+			emerged[g] = ready[g];
+			ready[g] = 0;
+		}
+		for(int age = 1; age < ages; age++)
+		{
+			int slot = getSlot(age) * GROUPS;
+			for(int g = 0; g < GROUPS; g++)
+			{
+				if(counts[slot + g] > 0)
+				{
+					int n = random.nextBinomial(counts[slot + g], emergenceHazard[age]);
+					counts[slot + g] -= n;
+					emerged[g] += n;
+				}
+			}
+		}
+		for(int g = 0; g < GROUPS; g++)
+		{
+			total -= emerged[g];
+		}
+	}
+
+	/**
+	 * Removes every pupa
+	 */
+	public void clear()
+	{
+		Arrays.fill(counts, 0);
+		Arrays.fill(ready, 0);
+		total = 0;
+	}
+
+	/**
+	 * @return The number of bytes writeCheckpoint will write
+	 */
+	public int getCheckpointSize()
+	{
+		return 4 + 4 + 4 * (counts.length + GROUPS);
+	}
+
+	/**
+	 * Writes the ring as it is into a checkpoint (see Checkpoint). The head is kept rather than
+	 * rotated to 0, since update draws the cohorts' deaths in slot order.
+	 * @param buffer Where to write
+	 */
+	public void writeCheckpoint(ByteBuffer buffer)
+	{
+		buffer.putInt(ages);
+		buffer.putInt(head);
+		Checkpoint.putInts(buffer, counts, 0, counts.length);
+		Checkpoint.putInts(buffer, ready, 0, GROUPS);
+	}
+
+	/**
+	 * Replaces the counts with those in a checkpoint written by writeCheckpoint
+	 * @param buffer Where to read from
+	 */
+	public void readCheckpoint(ByteBuffer buffer)
+	{
+		int savedAges = buffer.getInt();
+		if(savedAges != ages)
+		{
+			throw new IllegalStateException("Checkpoint has " + savedAges + " pupa ages, this model has " + ages);
+		}
+		head = buffer.getInt();
+		if(head < 0 || head >= ages)
+		{
+			throw new IllegalStateException("Bad ring head " + head);
+		}
+		Checkpoint.getInts(buffer, counts, 0, counts.length);
+		Checkpoint.getInts(buffer, ready, 0, GROUPS);
+		total = 0;
+		for(int count: counts)
+		{
+			total += count;
+		}
+		for(int count: ready)
+		{
+			total += count;
+		}
+	}
+
+	/**
+	 * Writes one save-file line per pupa, in the same format as BreedingSite.getInfo.
+	 * Larval times are not stored, so each pupa is given one drawn from the larval time
+	 * distribution conditional on not having emerged yet.
+	 * @param builder Where to write the lines
+	 * @param location The site's location
+	 * @param random The site's random number stream
+	 */
+	public void appendInfo(StringBuilder builder, Position location, RandomSource random)
+	{
+		for(int age = 0; age < ages; age++)
+		{
+			int slot = getSlot(age) * GROUPS;
+			for(int g = 0; g < GROUPS; g++)
+			{
+				double days = age / (double)SimulationEngine.UPDATES_PER_DAY;
+				for(int k = 0; k < counts[slot + g]; k++)
+				{
+					double low = Math.max(minLarvalTime, days);
+					appendLine(builder, days, low + (maxLarvalTime - low) * random.nextDouble(), g, location);
+				}
+			}
+		}
+		for(int g = 0; g < GROUPS; g++)
+		{
+			for(int k = 0; k < ready[g]; k++)
+			{
+				appendLine(builder, maxLarvalTime, minLarvalTime, g, location);
+			}
+		}
+	}
+
+	private static void appendLine(StringBuilder builder, double age, double larvalTime, int group, Position location)
+	{
+		int genderNumber = group / GENOTYPES.length;
+		int genotypeNumber = 2 - group % GENOTYPES.length;
+		builder.append(age).append(' ').append(larvalTime).append(' ').append(genderNumber).append(' ')
+				.append(genotypeNumber).append(' ').append(location.x).append(' ').append(location.y).append('\n');
+	}
+
+	/**
+	 * @return The gender of an index into the emerged array
+	 */
+	public static Gender getGender(int group)
+	{
+		return group >= GENOTYPES.length ? Gender.FEMALE : Gender.MALE;
+	}
+
+	/**
+	 * @return The genotype of an index into the emerged array
+	 */
+	public static Genotype getGenotype(int group)
+	{
+		return GENOTYPES[group % GENOTYPES.length];
+	}
+
+	/**
+	 * @return The number of groups (gender and genotype combinations)
+	 */
+	public static int getNumGroups()
+	{
+		return GROUPS;
+	}
+
+	/**
+	 * @return The total number of pupae
+	 */
+	public int getTotal()
+	{
+		return total;
+	}
+}
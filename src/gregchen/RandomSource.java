@@ -0,0 +1,239 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A seeded, splittable source of random numbers. A simulation creates one from a
+ * single seed and hands it (or streams split off it) down to every stochastic component,
+ * so that a run can be reproduced exactly from its seed.
+ * <p>
+ * This is the SplitMix64 generator used by java.util.SplittableRandom. It is
+ * reimplemented here so that its state is visible to the simulation.
+ * A RandomSource is not thread-safe: split off a separate stream for each thread
+ * instead of sharing one.
+ * @author Greg
+ *
+ */
+public class RandomSource
+{
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+	private long seed;
+	private final long gamma;
+
+	/**
+	 * Creates a stream from a seed
+	 * @param seed The seed
+	 */
+	public RandomSource(long seed)
+	{
+		this(seed, GOLDEN_GAMMA);
+	}
+
+	private RandomSource(long seed, long gamma)
+	{
+		this.seed = seed;
+		this.gamma = gamma;
+	}
+
+	/**
+	 * Recreates a stream from the state of another, e.g. one stored in a checkpoint
+	 * @param state The state, from getState()
+	 * @param gamma The increment, from getGamma()
+	 * @return A stream which continues exactly where the other one was
+	 */
+	public static RandomSource fromState(long state, long gamma)
+	{
+		if((gamma & 1) == 0)
+		{
+			throw new IllegalArgumentException("gamma must be odd");
+		}
+		return new RandomSource(state, gamma);
+	}
+
+	/**
+	 * @return A stream which will draw exactly the same numbers as this one, e.g. for forking a simulation
+	 */
+	public RandomSource copy()
+	{
+		return new RandomSource(seed, gamma);
+	}
+
+	/**
+	 * @return The current state, which together with the gamma determines every number still to come
+	 */
+	public long getState()
+	{
+		return seed;
+	}
+
+	/**
+	 * @return The increment added to the state on every draw
+	 */
+	public long getGamma()
+	{
+		return gamma;
+	}
+
+	/**
+	 * @return A seed for runs which do not care about being reproduced
+	 */
+	public static long randomSeed()
+	{
+		return ThreadLocalRandom.current().nextLong();
+	}
+
+	/**
+	 * Creates a new, statistically independent stream and advances this one
+	 * @return The new stream
+	 */
+	public RandomSource split()
+	{
+		return new RandomSource(nextLong(), mixGamma(nextSeed()));
+	}
+
+	public long nextLong()
+	{
+		return mix64(nextSeed());
+	}
+	public int nextInt()
+	{
+		return mix32(nextSeed());
+	}
+	/**
+	 * @param bound The (exclusive) upper bound, which must be positive
+	 * @return A uniformly distributed int between 0 (inclusive) and bound
+	 */
+	public int nextInt(int bound)
+	{
+		if(bound <= 0)
+		{
+			throw new IllegalArgumentException("bound must be positive");
+		}
+		int r = mix32(nextSeed());
+		int m = bound - 1;
+		if((bound & m) == 0) //power of two
+		{
+			return r & m;
+		}
+		for(int u = r >>> 1; u + m - (r = u % bound) < 0; u = mix32(nextSeed()) >>> 1)
+		{
+			//reject values from the incomplete last interval
+		}
+		return r;
+	}
+	/**
+	 * @return A uniformly distributed double between 0 (inclusive) and 1 (exclusive)
+	 */
+	public double nextDouble()
+	{
+		return (mix64(nextSeed()) >>> 11) * DOUBLE_UNIT;
+	}
+	public boolean nextBoolean()
+	{
+		return mix32(nextSeed()) < 0;
+	}
+	/**
+	 * Draws the number of successes in n independent trials, each with probability p.
+	 * Uses the waiting-time method (skipping ahead by geometric gaps), so the cost
+	 * grows with the number of successes rather than with n.
+	 * @param n The number of trials
+	 * @param p The probability of success of each trial
+	 * @return A binomially distributed count between 0 and n
+	 */
+	public int nextBinomial(int n, double p)
+	{
+		if(n <= 0 || p <= 0)
+		{
+			return 0;
+		}
+		if(p >= 1)
+		{
+			return n;
+		}
+		if(p > 0.5)
+		{
+			return n - nextBinomial(n, 1 - p);
+		}
+		double logQ = Math.log1p(-p);
+		int successes = 0;
+		double trials = 0;
+		while(true)
+		{
+			//trials up to and including the next success
+			trials += Math.floor(Math.log(1 - nextDouble()) / logQ) + 1;
+			if(trials > n)
+			{
+				return successes;
+			}
+			successes++;
+		}
+	}
+	/**
+	 * Draws the number of independent trials, each with probability p, up to and including
+	 * the first success: e.g. the update in which something with a constant chance p of
+	 * dying in each update dies. One draw replaces a coin flip in every one of those updates.
+	 * @param p The probability of success of each trial
+	 * @return A geometrically distributed count of at least 1, or Long.MAX_VALUE if p is 0
+	 */
+	public long nextGeometric(double p)
+	{
+		if(p >= 1)
+		{
+			return 1;
+		}
+		if(p <= 0)
+		{
+			return Long.MAX_VALUE;
+		}
+		//the cast saturates, so a tiny p cannot overflow
+		return (long)(Math.floor(Math.log(1 - nextDouble()) / Math.log1p(-p)) + 1);
+	}
+
+	private long nextSeed()
+	{
+		return seed += gamma;
+	}
+
+	private static long mix64(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	private static int mix32(long z)
+	{
+		z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+		return (int)(((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+	}
+
+	private static long mixGamma(long z)
+	{
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L; //gamma must be odd
+		int n = Long.bitCount(z ^ (z >>> 1));
+		return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+}
@@ -0,0 +1,226 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Draws large populations by writing pixels straight into the int[] behind a
+ * BufferedImage, instead of one drawImage call per mosquito. Up to HEATMAP_THRESHOLD
+ * mosquitoes, each is stamped as a disc in its genotype's colour (females with a dark
+ * centre, like the dot sprites). Above that, individual mosquitoes are no longer
+ * visible anyway, so the frame becomes a heatmap: the area is cut into HEATMAP_CELL
+ * pixel squares, each coloured by the genotype mix of the mosquitoes in it and made
+ * more opaque the more of them there are. The cost of a frame is then one pass over
+ * the population plus one pass over the pixels.
+ * @author Greg
+ *
+ */
+public class RasterRenderer
+{
+	public static final int HEATMAP_THRESHOLD = 20000;
+	public static final int HEATMAP_CELL = 4;
+	private static final int SATURATING_DENSITY = 24; //mosquitoes per cell drawn fully opaque
+	private static final int FEMALE_CENTRE = 0x202020;
+
+	private final int width, height;
+	private final BufferedImage frame;
+	private final int[] pixels;
+	private final int[] backgroundPixels;
+	private final int[] genotypeColors = new int[Genotype.values().length];
+
+	private double discRadius = -1;
+	private int[] discOffsetX = new int[0], discOffsetY = new int[0];
+
+	private final int cellColumns, cellRows;
+	private final int[] cellCounts; //cellCounts[cell * 3 + genotype ordinal]
+	private final int[] alphaTable = new int[SATURATING_DENSITY + 1];
+
+	/**
+	 * @param width Width of the frame in pixels
+	 * @param height Height of the frame in pixels
+	 * @param background Drawn under every frame, or null for black
+	 */
+	public RasterRenderer(int width, int height, BufferedImage background)
+	{
+		this.width = width;
+		this.height = height;
+		frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		pixels = ((DataBufferInt)frame.getRaster().getDataBuffer()).getData();
+		if(background != null)
+		{
+			Graphics g = frame.getGraphics();
+			g.drawImage(background, 0, 0, null);
+			g.dispose();
+		}
+		backgroundPixels = pixels.clone();
+		for(Genotype genotype: Genotype.values())
+		{
+			genotypeColors[genotype.ordinal()] = SpriteSheet.getColor(genotype).getRGB() & 0xffffff;
+		}
+
+		cellColumns = (width + HEATMAP_CELL - 1) / HEATMAP_CELL;
+		cellRows = (height + HEATMAP_CELL - 1) / HEATMAP_CELL;
+		cellCounts = new int[cellColumns * cellRows * genotypeColors.length];
+		//opacity grows with the log of the density, so sparse cells still show up
+		for(int n = 1; n <= SATURATING_DENSITY; n++)
+		{
+			alphaTable[n] = (int)Math.round(255 * (0.25 + 0.75 * Math.log(n) / Math.log(SATURATING_DENSITY)));
+		}
+	}
+
+	/**
+	 * Draws a snapshot into the frame
+	 * @param snapshot The snapshot
+	 * @param interpolation How far (0 to 1) the mosquitoes have moved on towards the next update
+	 * @return The frame, valid until the next call
+	 */
+	public BufferedImage render(PopulationSnapshot snapshot, double interpolation)
+	{
+		System.arraycopy(backgroundPixels, 0, pixels, 0, pixels.length);
+		if(snapshot.size() > HEATMAP_THRESHOLD)
+		{
+			renderHeatmap(snapshot);
+		}
+		else
+		{
+			renderDiscs(snapshot, interpolation);
+		}
+		return frame;
+	}
+
+	/**
+	 * @return Whether a snapshot of this size is drawn as a heatmap
+	 */
+	public boolean isHeatmap(PopulationSnapshot snapshot)
+	{
+		return snapshot.size() > HEATMAP_THRESHOLD;
+	}
+
+	private void renderDiscs(PopulationSnapshot snapshot, double interpolation)
+	{
+		if(snapshot.getRadius() != discRadius)
+		{
+			setDiscRadius(snapshot.getRadius());
+		}
+		for(int i = 0; i < snapshot.size(); i++)
+		{
+			double distance = snapshot.getSpeed(i) * interpolation;
+			int cx = (int)(snapshot.getX(i) + distance * Math.cos(snapshot.getDirection(i)));
+			int cy = (int)(snapshot.getY(i) + distance * Math.sin(snapshot.getDirection(i)));
+			int color = genotypeColors[snapshot.getGenotype(i).ordinal()];
+			for(int k = 0; k < discOffsetX.length; k++)
+			{
+				int px = cx + discOffsetX[k];
+				int py = cy + discOffsetY[k];
+				if(px >= 0 && px < width && py >= 0 && py < height)
+				{
+					pixels[py * width + px] = color;
+				}
+			}
+			if(snapshot.isFemale(i) && cx >= 0 && cx < width && cy >= 0 && cy < height)
+			{
+				pixels[cy * width + cx] = FEMALE_CENTRE;
+			}
+		}
+	}
+
+	private void setDiscRadius(double radius)
+	{
+		discRadius = radius;
+		int r = (int)Math.ceil(radius);
+		int n = 0;
+		int[] xs = new int[(2 * r + 1) * (2 * r + 1)];
+		int[] ys = new int[xs.length];
+		for(int dy = -r; dy <= r; dy++)
+		{
+			for(int dx = -r; dx <= r; dx++)
+			{
+				if(dx * dx + dy * dy <= radius * radius)
+				{
+					xs[n] = dx;
+					ys[n] = dy;
+					n++;
+				}
+			}
+		}
+		discOffsetX = Arrays.copyOf(xs, n);
+		discOffsetY = Arrays.copyOf(ys, n);
+	}
+
+	private void renderHeatmap(PopulationSnapshot snapshot)
+	{
+		int numGenotypes = genotypeColors.length;
+		Arrays.fill(cellCounts, 0);
+		for(int i = 0; i < snapshot.size(); i++)
+		{
+			int column = (int)snapshot.getX(i) / HEATMAP_CELL;
+			int row = (int)snapshot.getY(i) / HEATMAP_CELL;
+			if(column >= 0 && column < cellColumns && row >= 0 && row < cellRows)
+			{
+				cellCounts[(row * cellColumns + column) * numGenotypes + snapshot.getGenotype(i).ordinal()]++;
+			}
+		}
+		for(int row = 0; row < cellRows; row++)
+		{
+			for(int column = 0; column < cellColumns; column++)
+			{
+				int cell = (row * cellColumns + column) * numGenotypes;
+				int total = 0;
+				int red = 0, green = 0, blue = 0;
+				for(int g = 0; g < numGenotypes; g++)
+				{
+					int count = cellCounts[cell + g];
+					total += count;
+					red += count * (genotypeColors[g] >> 16 & 0xff);
+					green += count * (genotypeColors[g] >> 8 & 0xff);
+					blue += count * (genotypeColors[g] & 0xff);
+				}
+				if(total > 0)
+				{
+					fillCell(column, row, red / total, green / total, blue / total,
+							alphaTable[Math.min(total, SATURATING_DENSITY)]);
+				}
+			}
+		}
+	}
+
+	//blends a colour over one heatmap cell of the frame
+	private void fillCell(int column, int row, int red, int green, int blue, int alpha)
+	{
+		int lastY = Math.min(height, (row + 1) * HEATMAP_CELL);
+		int lastX = Math.min(width, (column + 1) * HEATMAP_CELL);
+		int keep = 255 - alpha;
+		for(int y = row * HEATMAP_CELL; y < lastY; y++)
+		{
+			for(int x = column * HEATMAP_CELL; x < lastX; x++)
+			{
+				int under = pixels[y * width + x];
+				int r = ((under >> 16 & 0xff) * keep + red * alpha) / 255;
+				int g = ((under >> 8 & 0xff) * keep + green * alpha) / 255;
+				int b = ((under & 0xff) * keep + blue * alpha) / 255;
+				pixels[y * width + x] = r << 16 | g << 8 | b;
+			}
+		}
+	}
+}
@@ -0,0 +1,103 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.util.Arrays;
+
+/**
+ * The durations of the most recent WINDOW samples of something, e.g. one phase of an
+ * update, kept in a ring so that recording is a single array store. Percentiles are
+ * worked out from a sorted copy when asked for, which is rare (a JMX client polling
+ * every few seconds). Samples are recorded by one thread; another thread reading
+ * while it records may see a sample from just before or just after.
+ * @author Greg
+ *
+ */
+public class RollingHistogram
+{
+	public static final int WINDOW = 1024;
+
+	private final long[] samples = new long[WINDOW];
+	private volatile long count = 0; //all-time number of samples
+	private volatile long total = 0; //all-time sum of samples
+
+	/**
+	 * @param sample The value to record, e.g. a duration in nanoseconds
+	 */
+	public void record(long sample)
+	{
+		long n = count;
+		samples[(int)(n % WINDOW)] = sample;
+		total += sample;
+		count = n + 1;
+	}
+
+	/**
+	 * @return The number of samples ever recorded
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * @return The sum of every sample ever recorded
+	 */
+	public long getTotal()
+	{
+		return total;
+	}
+
+	/**
+	 * @return A sorted copy of the samples in the window
+	 */
+	public long[] getWindow()
+	{
+		int n = (int)Math.min(count, WINDOW);
+		long[] window = new long[n];
+		System.arraycopy(samples, 0, window, 0, n);
+		Arrays.sort(window);
+		return window;
+	}
+
+	/**
+	 * @param window A sorted window, from getWindow()
+	 * @param percentile Between 0 and 100
+	 * @return The sample at that percentile (nearest rank), or 0 if there are none
+	 */
+	public static long getPercentile(long[] window, double percentile)
+	{
+		if(window.length == 0)
+		{
+			return 0;
+		}
+		int rank = (int)Math.ceil(percentile / 100 * window.length);
+		return window[Math.min(window.length - 1, Math.max(0, rank - 1))];
+	}
+
+	/**
+	 * Forgets every sample
+	 */
+	public void reset()
+	{
+		count = 0;
+		total = 0;
+	}
+}
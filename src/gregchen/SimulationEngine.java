@@ -0,0 +1,1086 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+import gregchen.SimulationEvents.OvipositionEvent;
+import gregchen.SimulationEvents.ReleaseEvent;
+import gregchen.SimulationEvents.TickEvent;
+import gregchen.SimulationMetrics.Phase;
+
+/**
+ * The pure-compute part of the mosquito population simulation. The engine owns the
+ * mosquitoes and breeding sites and advances them one update (1/30 of a day) at a time.
+ * It has no window and no frame pacing, so it can be stepped as fast as the CPU allows
+ * or driven by a viewer such as {@link Simulation}.
+ * @author Greg
+ *
+ */
+public class SimulationEngine
+{
+	public static final double EMERGENCE_SURVIVAL_PROB = 0.83; //Stochastic Population...
+	public static final int MAX_DISTANCE_TO_BREEDING_SITE = 33;
+	public static final double MATING_PROB = 1.0;//0.7;
+	public static final int DEFAULT_RADIUS = 3;
+	public static final int DEFAULT_SPEED = 6;
+	public static final int UPDATES_PER_DAY = 30;
+
+	public static final int SCALE = 1;
+	public static final int NUM_BREEDING_SITES = 107; //per SCALE * SCALE
+	//keep each breeding site's pupae as counts per age, gender and genotype (see PupaCohorts)
+	//instead of one Pupa object each; read when the sites are created
+	public static boolean AGGREGATE_AQUATIC_STAGE = false;
+	public static final int ADULT_CHUNK_SIZE = 4096; //mosquitoes per task in the parallel adult phase
+	public static final int SITE_CHUNK_SIZE = 8; //breeding sites per task in the parallel site phase
+
+	static int resultCounter = 1;
+
+	boolean fromSave = false;
+	boolean saveState = false;
+	boolean printNumbers = false;
+	boolean saveData = false;
+
+	private double releaseInterval = 2.0;
+	private int numReleases = 5;
+
+	private int releaseCounter;
+	private double timeOfLastRelease;
+	private double simulationDayCounter;
+	private int numPerRelease = 0;
+
+	private MosquitoPopulation population;
+	private CollisionGrid collisionGrid;
+	private ArrayList<BreedingSite> breedingSites;
+	private BreedingSiteIndex breedingSiteIndex;
+	private ForkJoinPool pool; //null when running sequentially
+	private AdultChunk[] adultChunks = new AdultChunk[0];
+	private final ArrayList<EmergenceBuffer> siteChunks = new ArrayList<EmergenceBuffer>(); //mature pupae of each chunk of sites
+	private final AdultChunk sequentialChunk = new AdultChunk();
+	private SnapshotBuffer snapshots; //null unless something is drawing the engine
+	private SimulationMetrics metrics; //null unless something is timing the engine
+	private int numEggsLaid, numEmerged, numMated; //this update's, for the metrics
+	private final long[] phaseNanos = new long[Phase.values().length]; //this update's, for the metrics and the tick event
+	private boolean timed; //whether this update's phases are being timed
+	private final EmergenceBuffer maturePupae = new EmergenceBuffer(); //reused by every site, every update
+	private int width, height;
+	private double defaultRadius, defaultSpeed;
+	private boolean fsRIDL = false;
+	private int initialNumber;
+	private PopulationStats stats; //created when first asked for
+	private boolean finished = false;
+	private long seed;
+	private RandomSource random;
+	PrintWriter pw;
+
+	/**
+	 * Constructor for an engine with a random seed
+	 * @param width Width of the simulated area
+	 * @param height Height of the simulated area
+	 * @param defaultRadius Default radius for Actors
+	 * @param defaultSpeed Default speed for actors
+	 * @param fsRIDL Whether or not the gene is lethal to females
+	 * @param initialNumber The inital number of insects
+	 * @param numReleases The number of release
+	 * @param releaseInterval The release interval
+	 * @param numPerRelease The number of insects released each time
+	 */
+	public SimulationEngine(int width, int height, double defaultRadius, double defaultSpeed, boolean fsRIDL, int initialNumber, int numReleases, double releaseInterval, int numPerRelease)
+	{
+		this(width, height, defaultRadius, defaultSpeed, fsRIDL, initialNumber, numReleases, releaseInterval, numPerRelease, RandomSource.randomSeed());
+	}
+
+	/**
+	 * The main constructor for the engine
+	 * @param width Width of the simulated area
+	 * @param height Height of the simulated area
+	 * @param defaultRadius Default radius for Actors
+	 * @param defaultSpeed Default speed for actors
+	 * @param fsRIDL Whether or not the gene is lethal to females
+	 * @param initialNumber The inital number of insects
+	 * @param numReleases The number of release
+	 * @param releaseInterval The release interval
+	 * @param numPerRelease The number of insects released each time
+	 * @param seed The seed from which every random number in the run is drawn
+	 */
+	public SimulationEngine(int width, int height, double defaultRadius, double defaultSpeed, boolean fsRIDL, int initialNumber, int numReleases, double releaseInterval, int numPerRelease, long seed)
+	{
+		this.seed = seed;
+		this.random = new RandomSource(seed);
+		this.width = width;
+		this.height = height;
+		this.defaultRadius = defaultRadius;
+		this.defaultSpeed = defaultSpeed;
+		this.fsRIDL = fsRIDL;
+		this.initialNumber = initialNumber;
+		if(startsFromSave(initialNumber))
+		{
+			fromSave = true;
+		}
+
+		if(saveData)
+		{
+			try {
+				pw = new PrintWriter(new File("Population" + resultCounter + ".txt"));
+			} catch (FileNotFoundException e) {
+				e.printStackTrace();
+			}
+			pw.println("Initial number: " + initialNumber + " Number per release: " + numPerRelease
+					+ " Number Releases: " + numReleases + " Release Interval: " + releaseInterval);
+			resultCounter++;
+		}
+
+		this.numPerRelease = numPerRelease;
+		this.numReleases = numReleases;
+		this.releaseInterval = releaseInterval;
+
+		init(initialNumber);
+	}
+
+	/**
+	 * Copy constructor behind fork. Every array and pupa is copied, and every random number
+	 * stream is either copied or, given a new seed, split off a new engine stream in site order.
+	 */
+	private SimulationEngine(SimulationEngine other, Long newSeed)
+	{
+		width = other.width;
+		height = other.height;
+		defaultRadius = other.defaultRadius;
+		defaultSpeed = other.defaultSpeed;
+		fsRIDL = other.fsRIDL;
+		initialNumber = other.initialNumber;
+		numReleases = other.numReleases;
+		releaseInterval = other.releaseInterval;
+		numPerRelease = other.numPerRelease;
+		releaseCounter = other.releaseCounter;
+		timeOfLastRelease = other.timeOfLastRelease;
+		simulationDayCounter = other.simulationDayCounter;
+		finished = other.finished;
+		seed = newSeed != null ? newSeed : other.seed;
+		random = newSeed != null ? new RandomSource(newSeed) : other.random.copy();
+
+		population = new MosquitoPopulation(other.population);
+		if(newSeed != null)
+		{
+			population.forgetDeathUpdates();
+		}
+		collisionGrid = new CollisionGrid(defaultRadius, width, height);
+		breedingSites = new ArrayList<BreedingSite>(other.breedingSites.size());
+		breedingSiteIndex = new BreedingSiteIndex(breedingSites, MAX_DISTANCE_TO_BREEDING_SITE);
+		for(BreedingSite b: other.breedingSites)
+		{
+			addBreedingSite(newSeed != null ? new BreedingSite(b, random.split(), true) : new BreedingSite(b, b.getRandom().copy()));
+		}
+	}
+
+	/**
+	 * Makes an exact, independent copy of the engine, which carries on from here exactly as
+	 * this one will. Only call between updates. The copy runs sequentially until given threads.
+	 * @return The copy
+	 */
+	public SimulationEngine fork()
+	{
+		return new SimulationEngine(this, null);
+	}
+
+	/**
+	 * Starts a new scenario from the current state of the engine, e.g. a burn-in loaded once and
+	 * shared by every run of a sweep. The mosquitoes and pupae are copied, the day is reset to 0
+	 * and the release schedule starts over, exactly as for an engine loading a text save.
+	 * The random number streams are drawn afresh from the seed the same way such an engine draws
+	 * them, so a fork of a freshly loaded save is identical to a new engine loading it with that seed.
+	 * Only call between updates; several threads may fork the same engine at once as long as
+	 * none of them updates it.
+	 * @param fsRIDL Whether or not the gene is lethal to females
+	 * @param numReleases The number of releases
+	 * @param releaseInterval The release interval
+	 * @param numPerRelease The number of insects released each time
+	 * @param seed The seed for the scenario's random numbers
+	 * @return The new engine
+	 */
+	public SimulationEngine fork(boolean fsRIDL, int numReleases, double releaseInterval, int numPerRelease, long seed)
+	{
+		SimulationEngine fork = new SimulationEngine(this, seed);
+		fork.fsRIDL = fsRIDL;
+		fork.numReleases = numReleases;
+		fork.releaseInterval = releaseInterval;
+		fork.numPerRelease = numPerRelease;
+		fork.releaseCounter = 0;
+		fork.timeOfLastRelease = -releaseInterval;
+		fork.simulationDayCounter = 0;
+		fork.finished = false;
+		return fork;
+	}
+
+	/**
+	 * @param initialNumber An initial number of mosquitoes
+	 * @return Whether an engine given it starts from the text save in /saveData rather than a random population
+	 */
+	public static boolean startsFromSave(int initialNumber)
+	{
+		return initialNumber == 1000;
+	}
+
+	/**
+	 * Constructor for an engine restored from a checkpoint written by writeCheckpoint.
+	 * Use Checkpoint.read rather than calling this directly.
+	 * @param buffer Where to read from
+	 */
+	SimulationEngine(ByteBuffer buffer)
+	{
+		width = buffer.getInt();
+		height = buffer.getInt();
+		defaultRadius = buffer.getDouble();
+		defaultSpeed = buffer.getDouble();
+		fsRIDL = buffer.get() != 0;
+		initialNumber = buffer.getInt();
+		numReleases = buffer.getInt();
+		releaseInterval = buffer.getDouble();
+		numPerRelease = buffer.getInt();
+		releaseCounter = buffer.getInt();
+		timeOfLastRelease = buffer.getDouble();
+		simulationDayCounter = buffer.getDouble();
+		finished = buffer.get() != 0;
+		seed = buffer.getLong();
+		random = RandomSource.fromState(buffer.getLong(), buffer.getLong());
+		//the adult counts, which the population recounts as it is read
+		buffer.position(buffer.position() + 5 * 4);
+
+		population = new MosquitoPopulation(defaultRadius);
+		population.readCheckpoint(buffer);
+		collisionGrid = new CollisionGrid(defaultRadius, width, height);
+		int numSites = buffer.getInt();
+		breedingSites = new ArrayList<BreedingSite>(numSites);
+		breedingSiteIndex = new BreedingSiteIndex(breedingSites, MAX_DISTANCE_TO_BREEDING_SITE);
+		for(int i = 0; i < numSites; i++)
+		{
+			addBreedingSite(new BreedingSite(buffer));
+		}
+	}
+
+	/**
+	 * @return The number of bytes writeCheckpoint will write
+	 */
+	long getCheckpointSize()
+	{
+		long size = 4 + 4 + 8 + 8 + 1 + 4 + 4 + 8 + 4 + 4 + 8 + 8 + 1 + 8 + 8 + 8 + 5 * 4;
+		size += population.getCheckpointSize();
+		size += 4;
+		for(BreedingSite b: breedingSites)
+		{
+			size += b.getCheckpointSize();
+		}
+		return size;
+	}
+
+	/**
+	 * Writes the whole state of the engine, including every random number stream, into
+	 * a checkpoint. Only call between updates. Use Checkpoint.write rather than calling this directly.
+	 * @param buffer Where to write, with room for getCheckpointSize() bytes
+	 */
+	void writeCheckpoint(ByteBuffer buffer)
+	{
+		buffer.putInt(width);
+		buffer.putInt(height);
+		buffer.putDouble(defaultRadius);
+		buffer.putDouble(defaultSpeed);
+		buffer.put((byte)(fsRIDL ? 1 : 0));
+		buffer.putInt(initialNumber);
+		buffer.putInt(numReleases);
+		buffer.putDouble(releaseInterval);
+		buffer.putInt(numPerRelease);
+		buffer.putInt(releaseCounter);
+		buffer.putDouble(timeOfLastRelease);
+		buffer.putDouble(simulationDayCounter);
+		buffer.put((byte)(finished ? 1 : 0));
+		buffer.putLong(seed);
+		buffer.putLong(random.getState());
+		buffer.putLong(random.getGamma());
+		buffer.putInt(getNumMales());
+		buffer.putInt(getNumFemales());
+		buffer.putInt(getNumFF());
+		buffer.putInt(getNumFf());
+		buffer.putInt(getNumff());
+
+		population.writeCheckpoint(buffer);
+		buffer.putInt(breedingSites.size());
+		for(BreedingSite b: breedingSites)
+		{
+			b.writeCheckpoint(buffer);
+		}
+	}
+
+	private void init(int initialNumber)
+	{
+		this.timeOfLastRelease = -this.releaseInterval;
+		this.simulationDayCounter = 0;
+		this.releaseCounter = 0;
+		breedingSites = new ArrayList<BreedingSite>();
+		breedingSiteIndex = new BreedingSiteIndex(breedingSites, MAX_DISTANCE_TO_BREEDING_SITE);
+		population = new MosquitoPopulation(defaultRadius);
+		collisionGrid = new CollisionGrid(defaultRadius, width, height);
+
+		if(fromSave)
+		{
+			load();
+		}
+		else
+		{
+			addInitialMosquitoes(initialNumber);
+			for(int i = 0; i < population.size(); i++)
+			{
+				population.setAge(i, 5 * random.nextDouble());
+			}
+
+			//make 107 * scalefactor breeding sites, filled each with 230 pupae
+			for(int i = 0; i < NUM_BREEDING_SITES * SCALE * SCALE; i++)
+			{
+				BreedingSite b = new BreedingSite(Position.getRandomPosition(this.width, this.height, random), random.split(), AGGREGATE_AQUATIC_STAGE);
+				addBreedingSite(b);
+				for(int j = 0; j < population.size() / NUM_BREEDING_SITES * SCALE * SCALE * 5; j++)
+				{
+					Pupa p = new Pupa(Genotype.ff, b.getLocation(), true, b.getRandom());
+					b.add(p);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs updates back to back, without any frame pacing, until the given
+	 * simulated day is reached or the engine finishes on its own
+	 * @param days The simulated day to stop at
+	 */
+	public void run(double days)
+	{
+		while(!finished && simulationDayCounter < days)
+		{
+			update();
+		}
+	}
+
+	public void save()
+	{
+		PrintWriter mosquitoInfo = null;
+		PrintWriter breedingSiteInfo = null;
+		try {
+			mosquitoInfo = new PrintWriter("MosquitoInfo.txt");
+			breedingSiteInfo = new PrintWriter(new File("BreedingSiteInfo.txt"));
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+		}
+		save(mosquitoInfo, breedingSiteInfo);
+		mosquitoInfo.close();
+		breedingSiteInfo.close();
+		try {
+			Checkpoint.write(this, new File("Checkpoint.bin"));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Writes a text save, in the format read by load
+	 * @param mosquitoInfo Where to write the contents of MosquitoInfo.txt
+	 * @param breedingSiteInfo Where to write the contents of BreedingSiteInfo.txt
+	 */
+	public void save(PrintWriter mosquitoInfo, PrintWriter breedingSiteInfo)
+	{
+		mosquitoInfo.println(population.size());
+		for(int i = 0; i < population.size(); i++)
+		{
+			mosquitoInfo.println(population.getInfo(i));
+		}
+		breedingSiteInfo.println(breedingSites.size());
+		for(BreedingSite b:breedingSites)
+		{
+			breedingSiteInfo.println(b.getInfo());
+		}
+	}
+
+	public void load()
+	{
+		load(this.getClass().getResourceAsStream("/saveData/BreedingSiteInfo.txt"),
+				this.getClass().getResourceAsStream("/saveData/MosquitoInfo.txt"));
+	}
+
+	/**
+	 * Replaces the mosquitoes and breeding sites with those in a text save, as written by save()
+	 * @param breedingSiteInfo The contents of BreedingSiteInfo.txt
+	 * @param mosquitoInfo The contents of MosquitoInfo.txt
+	 */
+	public void load(InputStream breedingSiteInfo, InputStream mosquitoInfo)
+	{
+		breedingSites.clear();
+		breedingSiteIndex.invalidate();
+		population.clear();
+
+		Scanner scanner = new Scanner(breedingSiteInfo);
+
+		int numSites = scanner.nextInt();
+		for(int i = 0; i < numSites; i++)
+		{
+			BreedingSite b = new BreedingSite(new Position(scanner.nextDouble(), scanner.nextDouble()), random.split(), AGGREGATE_AQUATIC_STAGE);
+			addBreedingSite(b);
+			int numPupae = scanner.nextInt();
+			scanner.nextLine();
+			for(int j = 0; j < numPupae; j++)
+			{
+				String line = scanner.nextLine();
+				Pupa p = new Pupa(line);
+				b.add(p);
+			}
+		}
+
+
+		scanner = new Scanner(mosquitoInfo);
+
+		int numMosquitoes = scanner.nextInt();
+		scanner.nextLine();
+		for(int i = 0; i < numMosquitoes; i++)
+		{
+			population.add(new Mosquito(scanner.nextLine()));
+		}
+	}
+
+	public void addInitialMosquitoes(int number)
+	{
+		for(int i = 0; i < number; i++)
+		{
+			Position location = Position.getRandomPosition(width, height, random);
+
+			Genotype genotype;
+
+			genotype = Genotype.ff;
+
+			Gender gender;
+
+			if(random.nextBoolean())
+			{
+				gender = Gender.MALE;
+			}
+			else
+			{
+				gender = Gender.FEMALE;
+			}
+
+			population.add(location, defaultSpeed, gender, genotype, random);
+		}
+	}
+
+	/**
+	 * Adds a breeding site and marks the site index for rebuilding
+	 * @param b The site
+	 */
+	public void addBreedingSite(BreedingSite b)
+	{
+		breedingSites.add(b);
+		breedingSiteIndex.invalidate();
+	}
+
+	/**
+	 * Removes a breeding site (with its pupae) and marks the site index for rebuilding
+	 * @param b The site
+	 */
+	public void removeBreedingSite(BreedingSite b)
+	{
+		breedingSites.remove(b);
+		breedingSiteIndex.invalidate();
+	}
+
+	public void setNumPerRelease(int numPerRelease)
+	{
+		this.numPerRelease = numPerRelease;
+	}
+
+	public void addFSRIDLMosquitoes(int number)
+	{
+		ReleaseEvent event = new ReleaseEvent();
+		event.begin();
+		timeOfLastRelease = simulationDayCounter;
+		for(int i = 0; i < number; i++)
+		{
+			Position location = new Position(300 + 100 * random.nextDouble() - 50,300 + 100 * random.nextDouble() - 50);
+			population.add(location, defaultSpeed, Gender.MALE, Genotype.FF, random);
+		}
+		event.end();
+		if(event.shouldCommit())
+		{
+			event.day = simulationDayCounter;
+			event.released = number;
+			event.population = population.size();
+			event.commit();
+		}
+	}
+
+	public void addMosquito(Pupa pupa)
+	{
+		population.add(pupa.getBirthLocation(), defaultSpeed, pupa.getGender(), pupa.getGenotype(), random);
+	}
+
+	/**
+	 * Advances the simulation by one update, i.e. 1/30 of a day
+	 */
+	public void update()
+	{
+		TickEvent tickEvent = new TickEvent();
+		tickEvent.begin();
+		timed = metrics != null || tickEvent.isEnabled();
+		long tickStart = timed ? System.nanoTime() : 0;
+		if(timed)
+		{
+			Arrays.fill(phaseNanos, 0);
+		}
+		numEggsLaid = 0;
+		numEmerged = 0;
+		numMated = 0;
+		if(printNumbers)
+		{
+			System.out.println("Number of mosquitoes:" + population.size());
+		}
+
+		simulationDayCounter+= 1d/UPDATES_PER_DAY;
+
+		if(saveData)
+		{
+			if(this.simulationDayCounter > 300)
+			{
+				pw.close();
+				finished = true;
+			}
+		}
+		//Save state to text file
+		if(saveState)
+		{
+			if(simulationDayCounter > 300)
+			{
+				save();
+				finished = true;
+			}
+		}
+		if(this.releaseCounter < this.numReleases && this.simulationDayCounter >= this.timeOfLastRelease + this.releaseInterval)
+		{
+			this.addFSRIDLMosquitoes(numPerRelease);
+			this.timeOfLastRelease = this.simulationDayCounter;
+			this.releaseCounter++;
+		}
+		long phaseStart = endPhase(Phase.RELEASE, tickStart);
+
+		//a site only draws from its own stream, so all of them can update before any pupa emerges
+		if(pool == null)
+		{
+			maturePupae.clear();
+			for(BreedingSite b: breedingSites)
+			{
+				b.update();
+				b.getMaturePupae(maturePupae);
+			}
+			phaseStart = endPhase(Phase.SITES, phaseStart);
+			emerge(maturePupae);
+		}
+		else
+		{
+			int numChunks = updateSitesInParallel();
+			phaseStart = endPhase(Phase.SITES, phaseStart);
+			for(int c = 0; c < numChunks; c++)
+			{
+				emerge(siteChunks.get(c));
+			}
+		}
+		phaseStart = endPhase(Phase.EMERGENCE, phaseStart);
+
+		//Update hosts
+		int numAdults = population.size();
+		population.nextUpdate();
+		if(pool == null)
+		{
+			sequentialChunk.start = 0;
+			sequentialChunk.end = population.size();
+			sequentialChunk.random = random;
+			updateAdults(sequentialChunk);
+		}
+		else
+		{
+			updateAdultsInParallel();
+		}
+		phaseStart = endPhase(Phase.ADULTS, phaseStart);
+		population.removeDead();
+		phaseStart = endPhase(Phase.COMPACTION, phaseStart);
+		if(printNumbers)
+		{
+			System.out.println(getNumMales() + " males, " + getNumFemales() + " females.");
+		}
+
+		if(saveData && !finished)
+		{
+			pw.println(this.simulationDayCounter + "\t" + population.size() + "\t" + getNumMales() + "\t" + getNumFemales());
+			phaseStart = endPhase(Phase.OUTPUT, phaseStart);
+		}
+
+		int numColliders = population.findCollisions(collisionGrid);
+		int[] colliders = collisionGrid.getPairs();
+		phaseStart = endPhase(Phase.COLLISIONS, phaseStart);
+
+		for(int k = 0; k < 2 * numColliders; k += 2)
+		{
+			int a = colliders[k];
+			int b = colliders[k + 1];
+			int female = -1;
+			int male = -1;
+			if(population.isFemale(b) && !population.isFemale(a))
+			{
+				female = b;
+				male = a;
+			}
+			else if(population.isFemale(a) && !population.isFemale(b))
+			{
+				female = a;
+				male = b;
+			}
+			if(female >= 0)
+			{
+				if(population.isFertile(female) && population.isFertile(male) && random.nextDouble() < MATING_PROB)
+				{
+					population.mate(female, male);
+					numMated++;
+				}
+			}
+		}
+		phaseStart = endPhase(Phase.MATING, phaseStart);
+		if(snapshots != null)
+		{
+			snapshots.publish(this);
+			endPhase(Phase.SNAPSHOT, phaseStart);
+		}
+		if(metrics != null)
+		{
+			metrics.endTick(tickStart, this, numAdults, collisionGrid.getNumTested(), numColliders, numMated, numEggsLaid, numEmerged);
+		}
+		tickEvent.end();
+		if(tickEvent.shouldCommit())
+		{
+			tickEvent.tick = Math.round(simulationDayCounter * UPDATES_PER_DAY);
+			tickEvent.day = simulationDayCounter;
+			tickEvent.population = population.size();
+			tickEvent.release = phaseNanos[Phase.RELEASE.ordinal()];
+			tickEvent.sites = phaseNanos[Phase.SITES.ordinal()];
+			tickEvent.emergence = phaseNanos[Phase.EMERGENCE.ordinal()];
+			tickEvent.adults = phaseNanos[Phase.ADULTS.ordinal()];
+			tickEvent.compaction = phaseNanos[Phase.COMPACTION.ordinal()];
+			tickEvent.collisions = phaseNanos[Phase.COLLISIONS.ordinal()];
+			tickEvent.mating = phaseNanos[Phase.MATING.ordinal()];
+			tickEvent.snapshot = phaseNanos[Phase.SNAPSHOT.ordinal()];
+			tickEvent.eggsLaid = numEggsLaid;
+			tickEvent.emergences = numEmerged;
+			tickEvent.commit();
+		}
+	}
+
+	/**
+	 * Times the phases of every update from now on, see SimulationMetrics
+	 * @param metrics Where to record them, or null to stop timing
+	 */
+	public void setMetrics(SimulationMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
+
+	public SimulationMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	//records the end of a phase if this update is timed, and returns the start of the next
+	private long endPhase(Phase phase, long start)
+	{
+		if(!timed)
+		{
+			return 0;
+		}
+		long now = System.nanoTime();
+		phaseNanos[phase.ordinal()] = now - start;
+		if(metrics != null)
+		{
+			metrics.record(phase, now - start);
+		}
+		return now;
+	}
+
+	/**
+	 * Makes the engine capture a snapshot at the end of every update and publish it
+	 * to a buffer, for a renderer on another thread
+	 * @param snapshots The buffer, or null to stop publishing
+	 */
+	public void setSnapshotBuffer(SnapshotBuffer snapshots)
+	{
+		this.snapshots = snapshots;
+		if(snapshots != null)
+		{
+			snapshots.publish(this);
+		}
+	}
+
+	/**
+	 * Turns mature pupae into adults, each surviving emergence with EMERGENCE_SURVIVAL_PROB
+	 */
+	private void emerge(EmergenceBuffer maturePupae)
+	{
+		for(int i = 0; i < maturePupae.size(); i++)
+		{
+			Position birthLocation = maturePupae.getBirthLocation(i);
+			Gender gender = maturePupae.getGender(i);
+			Genotype genotype = maturePupae.getGenotype(i);
+			for(int k = 0; k < maturePupae.getCount(i); k++)
+			{
+				if(random.nextInt() < EMERGENCE_SURVIVAL_PROB)
+				{
+					population.add(birthLocation, defaultSpeed, gender, genotype, random);
+					numEmerged++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Updates the breeding sites on the pool, SITE_CHUNK_SIZE sites per task. A site
+	 * only draws from its own stream, so the sites can run in any order; the mature
+	 * pupae are collected into one buffer per chunk, and the caller makes them emerge
+	 * afterwards in site order. The result is the same as that of the sequential loop.
+	 * @return The number of chunks, i.e. of buffers filled in siteChunks
+	 */
+	private int updateSitesInParallel()
+	{
+		int numChunks = (breedingSites.size() + SITE_CHUNK_SIZE - 1) / SITE_CHUNK_SIZE;
+		while(siteChunks.size() < numChunks)
+		{
+			siteChunks.add(new EmergenceBuffer());
+		}
+		if(numChunks > 0)
+		{
+			pool.invoke(new ChunkTask(0, numChunks, this::updateSites));
+		}
+		return numChunks;
+	}
+
+	private void updateSites(int chunk)
+	{
+		EmergenceBuffer buffer = siteChunks.get(chunk);
+		buffer.clear();
+		int end = Math.min(breedingSites.size(), (chunk + 1) * SITE_CHUNK_SIZE);
+		for(int s = chunk * SITE_CHUNK_SIZE; s < end; s++)
+		{
+			BreedingSite b = breedingSites.get(s);
+			b.update();
+			b.getMaturePupae(buffer);
+		}
+	}
+
+	/**
+	 * Runs the adult phase (fsRIDL kill, movement, mortality and egg laying)
+	 * for the mosquitoes of one chunk
+	 */
+	private void updateAdults(AdultChunk chunk)
+	{
+		chunk.clear();
+		RandomSource random = chunk.random;
+		for(int i = chunk.start; i < chunk.end; i++)
+		{
+			boolean female = population.isFemale(i);
+			Genotype genotype = population.getGenotype(i);
+			if(this.fsRIDL && genotype != Genotype.ff && female)
+			{
+				population.kill(i);
+			}
+
+			population.update(i, random);
+
+			population.bounceWalls(i, width, height);
+
+			if(population.isReadyToDeposit(i))
+			{
+				//deposit eggs, i.e. add pupae to nearest breeding site
+				population.removeEggs(i);
+
+				BreedingSite closest = breedingSiteIndex.getNearest(population.getX(i), population.getY(i), MAX_DISTANCE_TO_BREEDING_SITE);
+				if(closest != null)
+				{
+					if(chunk.bufferDeposits)
+					{
+						chunk.addDeposit(closest, genotype, population.getGenotypeMate(i));
+					}
+					else
+					{
+						deposit(closest, genotype, population.getGenotypeMate(i), random);
+					}
+				}
+			}
+		}
+	}
+
+	private void deposit(BreedingSite site, Genotype genotype, Genotype genotypeMate, RandomSource random)
+	{
+		site.flash();
+		for(int j = 0; j < Mosquito.NUM_EGGS_PER_OVIPOS; j++)
+		{
+			site.lay(Mosquito.getRandomGenotype(genotype, genotypeMate, random), random);
+		}
+		numEggsLaid += Mosquito.NUM_EGGS_PER_OVIPOS;
+		OvipositionEvent event = new OvipositionEvent();
+		if(event.shouldCommit())
+		{
+			event.x = site.getLocation().x;
+			event.y = site.getLocation().y;
+			event.eggs = Mosquito.NUM_EGGS_PER_OVIPOS;
+			event.genotype = genotype.name();
+			event.genotypeMate = genotypeMate.name();
+			event.aquatic = site.getNumPupae();
+			event.commit();
+		}
+	}
+
+	/**
+	 * Runs the adult phase on the pool. The population is cut into chunks of
+	 * ADULT_CHUNK_SIZE, each with its own stream split off the simulation's, so the
+	 * result depends only on the seed and not on the number of threads or on which
+	 * thread runs which chunk. Egg deposits are buffered per chunk and replayed in
+	 * chunk order afterwards, drawing from the receiving site's stream.
+	 */
+	private void updateAdultsInParallel()
+	{
+		breedingSiteIndex.ensureBuilt();
+		int numChunks = (population.size() + ADULT_CHUNK_SIZE - 1) / ADULT_CHUNK_SIZE;
+		if(adultChunks.length < numChunks)
+		{
+			AdultChunk[] chunks = Arrays.copyOf(adultChunks, numChunks);
+			for(int c = adultChunks.length; c < numChunks; c++)
+			{
+				chunks[c] = new AdultChunk();
+				chunks[c].bufferDeposits = true;
+			}
+			adultChunks = chunks;
+		}
+		for(int c = 0; c < numChunks; c++)
+		{
+			adultChunks[c].start = c * ADULT_CHUNK_SIZE;
+			adultChunks[c].end = Math.min(population.size(), (c + 1) * ADULT_CHUNK_SIZE);
+			adultChunks[c].random = random.split();
+		}
+		if(numChunks > 0)
+		{
+			pool.invoke(new ChunkTask(0, numChunks, c -> updateAdults(adultChunks[c])));
+		}
+		for(int c = 0; c < numChunks; c++)
+		{
+			AdultChunk chunk = adultChunks[c];
+			for(int d = 0; d < chunk.numDeposits; d++)
+			{
+				BreedingSite site = chunk.depositSites[d];
+				deposit(site, chunk.depositGenotypes[2 * d], chunk.depositGenotypes[2 * d + 1], site.getRandom());
+			}
+		}
+	}
+
+	/**
+	 * Runs an action for a range of chunks, splitting the range in half until one chunk is left
+	 */
+	private static class ChunkTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private final int from, to;
+		private final IntConsumer action;
+
+		ChunkTask(int from, int to, IntConsumer action)
+		{
+			this.from = from;
+			this.to = to;
+			this.action = action;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(to - from == 1)
+			{
+				action.accept(from);
+			}
+			else
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new ChunkTask(from, middle, action), new ChunkTask(middle, to, action));
+			}
+		}
+	}
+
+	/**
+	 * One chunk of the adult phase: its range of mosquitoes, its random stream and,
+	 * in parallel mode, its buffered egg deposits. Reused every update.
+	 */
+	private static class AdultChunk
+	{
+		int start, end;
+		RandomSource random;
+		boolean bufferDeposits = false;
+		int numDeposits;
+		BreedingSite[] depositSites = new BreedingSite[16];
+		Genotype[] depositGenotypes = new Genotype[32]; //mother's genotype, mate's genotype
+
+		void clear()
+		{
+			Arrays.fill(depositSites, 0, numDeposits, null);
+			numDeposits = 0;
+		}
+
+		void addDeposit(BreedingSite site, Genotype genotype, Genotype genotypeMate)
+		{
+			if(numDeposits == depositSites.length)
+			{
+				depositSites = Arrays.copyOf(depositSites, 2 * numDeposits);
+				depositGenotypes = Arrays.copyOf(depositGenotypes, 4 * numDeposits);
+			}
+			depositSites[numDeposits] = site;
+			depositGenotypes[2 * numDeposits] = genotype;
+			depositGenotypes[2 * numDeposits + 1] = genotypeMate;
+			numDeposits++;
+		}
+	}
+
+	/**
+	 * Runs the breeding site and adult phases of every update on a pool of threads.
+	 * The results of a parallel run depend only on the seed, not on the number of
+	 * threads, but they differ from those of a sequential run with the same seed.
+	 * @param threads The number of threads, or 1 (the default) to run sequentially
+	 */
+	public void setThreads(int threads)
+	{
+		if(pool != null)
+		{
+			pool.shutdown();
+		}
+		pool = threads > 1 ? new ForkJoinPool(threads) : null;
+	}
+
+	/**
+	 * @return Whether the engine has reached the end of a save/data-collection run
+	 */
+	public boolean isFinished()
+	{
+		return finished;
+	}
+	/**
+	 * @return The seed this run was started from
+	 */
+	public long getSeed()
+	{
+		return seed;
+	}
+	/**
+	 * @return The simulation's random number stream
+	 */
+	public RandomSource getRandom()
+	{
+		return random;
+	}
+	/**
+	 * @return The adult mosquitoes
+	 */
+	public MosquitoPopulation getPopulation()
+	{
+		return population;
+	}
+	public ArrayList<BreedingSite> getBreedingSites()
+	{
+		return breedingSites;
+	}
+	public double getSimulationDay()
+	{
+		return simulationDayCounter;
+	}
+	public int getWidth()
+	{
+		return width;
+	}
+	public int getHeight()
+	{
+		return height;
+	}
+	public int getNumPerRelease()
+	{
+		return numPerRelease;
+	}
+	public int getNumReleases()
+	{
+		return numReleases;
+	}
+	public double getReleaseInterval()
+	{
+		return releaseInterval;
+	}
+	public int getInitialNumber()
+	{
+		return initialNumber;
+	}
+	public boolean isFSRIDL()
+	{
+		return fsRIDL;
+	}
+	/**
+	 * @return A view of the engine's current population counts, see PopulationStats
+	 */
+	public PopulationStats getStats()
+	{
+		if(stats == null)
+		{
+			stats = new PopulationStats(this);
+		}
+		return stats;
+	}
+	//the counts below are of the adults alive now, kept up to date by the population
+	public int getNumMales()
+	{
+		return population.getNum(Gender.MALE);
+	}
+	public int getNumFemales()
+	{
+		return population.getNum(Gender.FEMALE);
+	}
+	public int getNumFF()
+	{
+		return population.getNum(Genotype.FF);
+	}
+	public int getNumFf()
+	{
+		return population.getNum(Genotype.Ff);
+	}
+	public int getNumff()
+	{
+		return population.getNum(Genotype.ff);
+	}
+}
@@ -0,0 +1,160 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events for the simulation, so a recording shows updates, releases,
+ * egg laying and culls next to GC pauses and CPU samples. Each event is created, begun
+ * and committed where it happens; its fields are only filled in when shouldCommit()
+ * says it will be recorded, so the events cost next to nothing when JFR is off or the
+ * event is disabled.
+ * <p>
+ * Like any JFR event they are switched on and off, and given thresholds, by the recording's
+ * settings. The defaults are below; simulation.jfc records all of them, e.g.
+ * <code>-XX:StartFlightRecording:filename=run.jfr,settings=default,settings=simulation.jfc</code>
+ * @author Greg
+ *
+ */
+public final class SimulationEvents
+{
+	public static final String CATEGORY = "Mosquito Simulation";
+
+	private SimulationEvents()
+	{
+	}
+
+	/**
+	 * One update of an engine, with the time spent in each phase. Recorded for every update by default.
+	 */
+	@Name("gregchen.Tick")
+	@Label("Simulation Update")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	@Threshold("0 ms")
+	public static class TickEvent extends Event
+	{
+		@Label("Update")
+		@Description("Number of updates since day 0")
+		public long tick;
+		@Label("Day")
+		public double day;
+		@Label("Adults")
+		public int population;
+		@Label("Release") @Timespan
+		public long release;
+		@Label("Breeding Sites") @Timespan
+		public long sites;
+		@Label("Emergence") @Timespan
+		public long emergence;
+		@Label("Adults Phase") @Timespan
+		public long adults;
+		@Label("Compaction") @Timespan
+		public long compaction;
+		@Label("Collisions") @Timespan
+		public long collisions;
+		@Label("Mating") @Timespan
+		public long mating;
+		@Label("Snapshot") @Timespan
+		public long snapshot;
+		@Label("Eggs Laid")
+		public int eggsLaid;
+		@Label("Emergences")
+		public int emergences;
+	}
+
+	/**
+	 * A release of fsRIDL males. Recorded for every release by default.
+	 */
+	@Name("gregchen.Release")
+	@Label("Release")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	@Threshold("0 ms")
+	public static class ReleaseEvent extends Event
+	{
+		@Label("Day")
+		public double day;
+		@Label("Released")
+		public int released;
+		@Label("Adults")
+		@Description("The number of adults after the release")
+		public int population;
+	}
+
+	/**
+	 * A female laying her eggs in a breeding site. There are thousands a day, so it is
+	 * instant (no duration to threshold on) and has to be enabled in the recording's settings.
+	 */
+	@Name("gregchen.Oviposition")
+	@Label("Oviposition")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	@Enabled(false)
+	public static class OvipositionEvent extends Event
+	{
+		@Label("Site X")
+		public double x;
+		@Label("Site Y")
+		public double y;
+		@Label("Eggs")
+		public int eggs;
+		@Label("Genotype")
+		public String genotype;
+		@Label("Mate's Genotype")
+		public String genotypeMate;
+		@Label("Aquatic")
+		@Description("The number of eggs, larvae and pupae in the site afterwards")
+		public int aquatic;
+	}
+
+	/**
+	 * A breeding site killing pupae in the FINAL stage down to its carrying capacity.
+	 * Only recorded when the cull takes longer than 100 microseconds by default.
+	 */
+	@Name("gregchen.Cull")
+	@Label("Carrying Capacity Cull")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	@Threshold("100 us")
+	public static class CullEvent extends Event
+	{
+		@Label("Site X")
+		public double x;
+		@Label("Site Y")
+		public double y;
+		@Label("Killed")
+		public int killed;
+		@Label("Capacity")
+		public int capacity;
+		@Label("Aquatic")
+		@Description("The number of eggs, larvae and pupae in the site afterwards")
+		public int aquatic;
+	}
+}
@@ -0,0 +1,269 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Timers and counters for the updates of one engine. The engine times each {@link Phase}
+ * of an update with System.nanoTime and records it in a RollingHistogram, and adds up how
+ * much work each update did. An engine without metrics (see SimulationEngine.setMetrics)
+ * skips all of this.
+ * <p>
+ * Register the metrics to see them over JMX, e.g. in JConsole under gregchen/SimulationMetrics.
+ * Only the thread updating the engine records; any thread may read.
+ * @author Greg
+ *
+ */
+public class SimulationMetrics implements SimulationMetricsMXBean
+{
+	/**
+	 * The phases of an update, in order. OUTPUT is the writing of results, which the
+	 * caller times after the update.
+	 */
+	public enum Phase
+	{
+		RELEASE, SITES, EMERGENCE, ADULTS, COMPACTION, COLLISIONS, MATING, SNAPSHOT, OUTPUT
+	}
+
+	private static final Phase[] PHASES = Phase.values();
+
+	private final String name;
+	private final RollingHistogram[] phases = new RollingHistogram[PHASES.length];
+	private final RollingHistogram ticks = new RollingHistogram();
+	private volatile long adultsUpdated, pairsTested, pairsFound, matings, eggsLaid, emergences;
+	private volatile double simulationDay;
+	private volatile int numAdults, numPupae;
+	private volatile long firstTickTime = -1, lastTickTime;
+	private ObjectName objectName;
+
+	/**
+	 * @param name Tells this engine's metrics apart from others over JMX
+	 */
+	public SimulationMetrics(String name)
+	{
+		this.name = name;
+		for(int i = 0; i < phases.length; i++)
+		{
+			phases[i] = new RollingHistogram();
+		}
+	}
+
+	/**
+	 * Records how long a phase took
+	 * @param phase The phase
+	 * @param start When the phase started, from System.nanoTime()
+	 * @return The time now, i.e. the start of the next phase
+	 */
+	public long endPhase(Phase phase, long start)
+	{
+		long now = System.nanoTime();
+		phases[phase.ordinal()].record(now - start);
+		return now;
+	}
+
+	/**
+	 * Records how long a phase took
+	 * @param phase The phase
+	 * @param nanos The duration
+	 */
+	public void record(Phase phase, long nanos)
+	{
+		phases[phase.ordinal()].record(nanos);
+	}
+
+	/**
+	 * Records the end of an update and what it did
+	 * @param start When the update started, from System.nanoTime()
+	 */
+	public void endTick(long start, SimulationEngine engine, int adults, long tested, int found, int mated, int eggs, int emerged)
+	{
+		long now = System.nanoTime();
+		ticks.record(now - start);
+		if(firstTickTime < 0)
+		{
+			firstTickTime = start;
+		}
+		lastTickTime = now;
+		adultsUpdated += adults;
+		pairsTested += tested;
+		pairsFound += found;
+		matings += mated;
+		eggsLaid += eggs;
+		emergences += emerged;
+		PopulationStats stats = engine.getStats();
+		simulationDay = stats.getSimulationDay();
+		numAdults = stats.getNumAdults();
+		numPupae = stats.getNumAquatic();
+	}
+
+	/**
+	 * Registers these metrics with the platform MBean server, as gregchen:type=SimulationMetrics,name=the name
+	 * @return Whether it worked; a failure (e.g. the name is taken) is printed but otherwise ignored
+	 */
+	public boolean register()
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			objectName = new ObjectName("gregchen:type=SimulationMetrics,name=" + ObjectName.quote(name));
+			server.registerMBean(this, objectName);
+			return true;
+		} catch (JMException e) {
+			System.err.println("Could not register metrics " + name + ": " + e);
+			objectName = null;
+			return false;
+		}
+	}
+
+	/**
+	 * Removes these metrics from the platform MBean server, if registered
+	 */
+	public void unregister()
+	{
+		if(objectName == null)
+		{
+			return;
+		}
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			System.err.println("Could not unregister metrics " + name + ": " + e);
+		}
+		objectName = null;
+	}
+
+	/**
+	 * @return One line per phase, e.g. to print at the end of a run
+	 */
+	public String getSummary()
+	{
+		StringBuilder builder = new StringBuilder();
+		for(PhaseStatistics statistics: getPhases())
+		{
+			builder.append(statistics).append('\n');
+		}
+		builder.append(String.format("%d updates, %d adults updated, %d pairs tested, %d pairs found, %d matings, %d eggs, %d emergences",
+				getTicks(), adultsUpdated, pairsTested, pairsFound, matings, eggsLaid, emergences));
+		return builder.toString();
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	@Override
+	public long getTicks()
+	{
+		return ticks.getCount();
+	}
+	@Override
+	public double getSimulationDay()
+	{
+		return simulationDay;
+	}
+	@Override
+	public int getNumAdults()
+	{
+		return numAdults;
+	}
+	@Override
+	public int getNumPupae()
+	{
+		return numPupae;
+	}
+	@Override
+	public List<PhaseStatistics> getPhases()
+	{
+		List<PhaseStatistics> list = new ArrayList<PhaseStatistics>(PHASES.length + 1);
+		for(Phase phase: PHASES)
+		{
+			list.add(new PhaseStatistics(phase.name(), phases[phase.ordinal()]));
+		}
+		list.add(new PhaseStatistics("TICK", ticks));
+		return list;
+	}
+	@Override
+	public double getMeanTickNanos()
+	{
+		return new PhaseStatistics("TICK", ticks).getMeanNanos();
+	}
+	@Override
+	public long getTickNanos99thPercentile()
+	{
+		return new PhaseStatistics("TICK", ticks).getNanos99thPercentile();
+	}
+	@Override
+	public double getTicksPerSecond()
+	{
+		long elapsed = lastTickTime - firstTickTime;
+		return firstTickTime < 0 || elapsed <= 0 ? 0 : getTicks() * 1e9 / elapsed;
+	}
+	@Override
+	public long getAdultsUpdated()
+	{
+		return adultsUpdated;
+	}
+	@Override
+	public long getPairsTested()
+	{
+		return pairsTested;
+	}
+	@Override
+	public long getPairsFound()
+	{
+		return pairsFound;
+	}
+	@Override
+	public long getMatings()
+	{
+		return matings;
+	}
+	@Override
+	public long getEggsLaid()
+	{
+		return eggsLaid;
+	}
+	@Override
+	public long getEmergences()
+	{
+		return emergences;
+	}
+
+	@Override
+	public void reset()
+	{
+		for(RollingHistogram histogram: phases)
+		{
+			histogram.reset();
+		}
+		ticks.reset();
+		adultsUpdated = pairsTested = pairsFound = matings = eggsLaid = emergences = 0;
+		firstTickTime = -1;
+	}
+}
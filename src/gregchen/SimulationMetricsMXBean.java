@@ -0,0 +1,58 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.util.List;
+
+/**
+ * What {@link SimulationMetrics} exposes over JMX, e.g. to JConsole or a scraper
+ * polling the platform MBean server. Durations are in nanoseconds.
+ * @author Greg
+ *
+ */
+public interface SimulationMetricsMXBean
+{
+	public long getTicks();
+	public double getSimulationDay();
+	public int getNumAdults();
+	public int getNumPupae();
+
+	/**
+	 * @return Timing of each phase of an update, and of whole updates, over the last RollingHistogram.WINDOW updates
+	 */
+	public List<PhaseStatistics> getPhases();
+
+	public double getMeanTickNanos();
+	public long getTickNanos99thPercentile();
+	public double getTicksPerSecond();
+
+	//totals since the start or the last reset
+	public long getAdultsUpdated();
+	public long getPairsTested();
+	public long getPairsFound();
+	public long getMatings();
+	public long getEggsLaid();
+	public long getEmergences();
+
+	/**
+	 * Zeroes every timer and counter
+	 */
+	public void reset();
+}
@@ -0,0 +1,80 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lock-free triple buffer of snapshots between one writer (the thread updating
+ * the engine) and one reader (the render thread). The writer fills its back snapshot
+ * and publishes it by swapping it with the middle one; the reader swaps its front
+ * snapshot with the middle one whenever a newer one has been published. Neither side
+ * ever waits for the other, and a snapshot is never written while it is being read.
+ * @author Greg
+ *
+ */
+public class SnapshotBuffer
+{
+	private static final int INDEX_MASK = 3;
+	private static final int FRESH = 4; //set in middle when the writer has published since the reader last took it
+
+	private final PopulationSnapshot[] snapshots = {new PopulationSnapshot(), new PopulationSnapshot(), new PopulationSnapshot()};
+	private final AtomicInteger middle = new AtomicInteger(2);
+	private int back = 0; //only touched by the writer
+	private int front = 1; //only touched by the reader
+
+	/**
+	 * @return The snapshot the writer may fill. Writer only.
+	 */
+	public PopulationSnapshot getBack()
+	{
+		return snapshots[back];
+	}
+
+	/**
+	 * Makes the back snapshot the latest one and gives the writer a free one. Writer only.
+	 */
+	public void publish()
+	{
+		back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+	}
+
+	/**
+	 * Convenience for the writer: captures an engine into the back snapshot and publishes it
+	 * @param engine The engine
+	 */
+	public void publish(SimulationEngine engine)
+	{
+		getBack().capture(engine);
+		publish();
+	}
+
+	/**
+	 * @return The most recently published snapshot, which stays valid until the next call. Reader only.
+	 */
+	public PopulationSnapshot getLatest()
+	{
+		if((middle.get() & FRESH) != 0)
+		{
+			front = middle.getAndSet(front) & INDEX_MASK;
+		}
+		return snapshots[front];
+	}
+}
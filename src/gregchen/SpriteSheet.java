@@ -20,65 +20,97 @@
 package gregchen;
 import java.awt.Color;
 import java.awt.Graphics;
-import java.awt.Graphics2D;
-import java.util.Random;
-
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * The frames of a resized, tinted sprite animation. A sheet is immutable and
+ * shared: {@link #get} returns the same sheet for every actor with the same picture,
+ * colour and radius, so creating actors never loads or tints images. Each actor only
+ * keeps an animation phase, which offsets its place in the cycle.
+ * @author Greg
+ *
+ */
 public class SpriteSheet 
 {
-	private Picture[] sprites;
-	private final int SPRITE_CHANGE_DELAY = 3;
-	private int currentSprite = 0;
-	private int spriteCounter = 0;
-	private int spriteCounter2 = 0;
+	public static final int SPRITE_CHANGE_DELAY = 3;
+	//concurrent since several simulations may draw at once
+	private static ConcurrentHashMap<String, SpriteSheet> sheets = new ConcurrentHashMap<String, SpriteSheet>();
+	
+	private final Picture[] sprites;
 	
 	//assumes the picture is of size n by kn
-	public SpriteSheet(String fileName, double radius)
+	private SpriteSheet(String fileName, Color color, double radius)
 	{
 		Picture pic = new Picture(fileName);
 		pic = pic.getResized(2 * radius);
-		sprites = pic.getPieces();
-		
-		randomizeSpriteCounter();
+		Picture[] pieces = pic.getPieces();
+		sprites = new Picture[pieces.length];
+		for(int i = 0; i < pieces.length; i++)
+		{
+			sprites[i] = pieces[i].getTinted(color);
+		}
+	}
+	
+	/**
+	 * Gets the shared sheet for a picture, colour and radius, creating it on first use
+	 * @param fileName The sprite picture
+	 * @param color The tint
+	 * @param radius The radius of the actors drawn with it
+	 * @return The sheet
+	 */
+	public static SpriteSheet get(String fileName, Color color, double radius)
+	{
+		String key = fileName + " " + color.getRGB() + " " + radius;
+		return sheets.computeIfAbsent(key, k -> new SpriteSheet(fileName, color, radius));
 	}
 	
-	protected void randomizeSpriteCounter()
+	/**
+	 * Gets the shared sheet for mosquitoes of a gender and genotype: females have a dot,
+	 * and ff, Ff and FF are green, magenta and red
+	 */
+	public static SpriteSheet get(boolean female, Genotype genotype, double radius)
 	{
-		Random random = new Random();
-		currentSprite = random.nextInt(sprites.length);
-		spriteCounter = random.nextInt(SPRITE_CHANGE_DELAY);
+		return get(female ? Mosquito.DOT_CIRCLE_FILE_LOCATION : Actor.CIRCLE_FILE_LOCATION, getColor(genotype), radius);
 	}
 	
-	public void tint(Color color)
+	public static Color getColor(Genotype genotype)
 	{
-		for(int i = 0; i < sprites.length; i++)
+		if(genotype == Genotype.ff)
+		{
+			return Color.GREEN;
+		}
+		else if(genotype == Genotype.Ff)
 		{
-			sprites[i] = sprites[i].getTinted(color);
+			return Color.MAGENTA;
 		}
+		return Color.RED;
 	}
 	
+	/**
+	 * Gets a starting phase for an actor, so that neighbours do not flap in step
+	 * @param id A number identifying the actor
+	 * @return A phase between 0 and 255
+	 */
+	public static byte getInitialPhase(int id)
+	{
+		return (byte)((id * 0x9e3779b1) >>> 24);
+	}
 	
-	public void update()
+	public int getNumSprites()
 	{
-		spriteCounter++;
-		if(spriteCounter > SPRITE_CHANGE_DELAY)
-		{
-			if( currentSprite != 3 || spriteCounter2 > -1)//SPRITE_CHANGE_DELAY)
-			{
-				currentSprite = (currentSprite + 1) % sprites.length;
-				spriteCounter2 = 0;
-				spriteCounter = 0;
-			}
-			else
-			{
-				spriteCounter2++;
-			}
-			
-		}
+		return sprites.length;
 	}
 	
-	public void drawCurrentSprite(Graphics g, Position p)
+	/**
+	 * Draws the frame an actor is showing. Frames change every SPRITE_CHANGE_DELAY + 1 updates.
+	 * @param g The graphics object to draw on
+	 * @param p The top-left corner
+	 * @param age The actor's age in days, which drives the animation
+	 * @param phase The actor's animation phase
+	 */
+	public void drawSprite(Graphics g, Position p, double age, byte phase)
 	{
-		sprites[currentSprite].draw(g, p);
+		int ticks = (int)(age * SimulationEngine.UPDATES_PER_DAY) + (phase & 0xff);
+		sprites[(ticks / (SPRITE_CHANGE_DELAY + 1)) % sprites.length].draw(g, p);
 	}
 }
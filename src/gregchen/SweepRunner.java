@@ -0,0 +1,395 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a grid of headless simulations over ranges of release schedules and writes
+ * one consolidated result table. Jobs are spread over all cores with a work-stealing
+ * {@link ForkJoinPool}, so long and short runs (e.g. early extinctions) balance out.
+ * <p>
+ * Arguments are given as name=value, where a value is either a single number,
+ * a comma separated list, or an inclusive range start:end[:step]. For example
+ * <pre>numReleases=1:10 releaseInterval=1:10 numPerRelease=500:2500:500 replicates=20 seed=42</pre>
+ * Every job gets its own seed, split in grid order off the sweep seed, so a whole sweep
+ * (or any single row of its table) can be reproduced.
+ * aggregated=true keeps the aquatic stage as cohort counts (see PupaCohorts), which is
+ * much cheaper for long sweeps.
+ * <p>
+ * Jobs starting from the same state are forked from one shared engine rather than each
+ * building their own: checkpoint=file starts every job from a binary checkpoint (see
+ * Checkpoint), and jobs whose initial number loads the text save share one copy of it.
+ * Either way the state is read and parsed once per sweep.
+ * <p>
+ * burnIn=days starts the other jobs from a population that has already run for that many
+ * days without releases, taken from a {@link BurnInCache} (in the directory given by
+ * cache=dir, BurnIn by default) so that repeating a sweep skips the burn-in entirely.
+ * Every job of a replicate starts from the same burnt-in state, and days are counted
+ * from the end of the burn-in.
+ * @author Greg
+ *
+ */
+public class SweepRunner
+{
+	public static final double SUCCESS_DAY = 300;
+	public static final int SUCCESS_POPULATION = 100;
+
+	private double[] numReleases = {7};
+	private double[] releaseIntervals = {7};
+	private double[] numPerRelease = {1000};
+	private double[] initialNumbers = {1000 * SimulationEngine.SCALE * SimulationEngine.SCALE};
+	private boolean[] fsRIDL = {true};
+	private int replicates = 1;
+	private double days = SUCCESS_DAY;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private String outputFile = "Sweep.txt";
+	private long seed = RandomSource.randomSeed();
+	private String checkpoint;
+	private double burnInDays = 0;
+	private String cacheDirectory = "BurnIn";
+	private SimulationEngine savedState; //shared starting state, only ever forked
+
+	/**
+	 * The parameters and outcome of a single simulation in the grid
+	 */
+	public static class Job implements Callable<Job>
+	{
+		final int numReleases;
+		final double releaseInterval;
+		final int numPerRelease;
+		final int initialNumber;
+		final boolean fsRIDL;
+		final int replicate;
+		final double days;
+		final long seed;
+		SimulationEngine start; //forked instead of building a new engine, if not null
+		BurnInCache burnIn; //if not null and there is no start, the burnt-in state for burnInSeed is forked
+		long burnInSeed;
+
+		double daysElapsed;
+		int total, males, females, numFF, numFf, numff;
+
+		Job(int numReleases, double releaseInterval, int numPerRelease, int initialNumber, boolean fsRIDL, int replicate, double days, long seed)
+		{
+			this.numReleases = numReleases;
+			this.releaseInterval = releaseInterval;
+			this.numPerRelease = numPerRelease;
+			this.initialNumber = initialNumber;
+			this.fsRIDL = fsRIDL;
+			this.replicate = replicate;
+			this.days = days;
+			this.seed = seed;
+		}
+
+		@Override
+		public Job call() throws IOException
+		{
+			SimulationEngine engine;
+			if(start == null && burnIn != null)
+			{
+				start = burnIn.get(600 * SimulationEngine.SCALE, 600 * SimulationEngine.SCALE,
+						SimulationEngine.DEFAULT_RADIUS, SimulationEngine.DEFAULT_SPEED, initialNumber, burnInSeed);
+			}
+			if(start != null)
+			{
+				engine = start.fork(fsRIDL, numReleases, releaseInterval, numPerRelease, seed);
+				start = null; //the shared state is no longer needed once forked
+			}
+			else
+			{
+				engine = new SimulationEngine(600 * SimulationEngine.SCALE, 600 * SimulationEngine.SCALE,
+						SimulationEngine.DEFAULT_RADIUS, SimulationEngine.DEFAULT_SPEED, fsRIDL,
+						initialNumber, numReleases, releaseInterval, numPerRelease, seed);
+			}
+			//step a day at a time so that extinct populations stop early
+			for(int day = 1; day <= days && !engine.isFinished(); day++)
+			{
+				engine.run(day);
+				if(engine.getPopulation().size() == 0)
+				{
+					break;
+				}
+			}
+			daysElapsed = engine.getSimulationDay();
+			total = engine.getPopulation().size();
+			males = engine.getNumMales();
+			females = engine.getNumFemales();
+			numFF = engine.getNumFF();
+			numFf = engine.getNumFf();
+			numff = engine.getNumff();
+			return this;
+		}
+
+		/**
+		 * Same criterion as the old hand-run sweeps: the population died out, or
+		 * is below 100 after 300 days
+		 * @return Whether the release schedule suppressed the population
+		 */
+		public boolean isSuccess()
+		{
+			return total == 0 || daysElapsed >= SUCCESS_DAY && total < SUCCESS_POPULATION;
+		}
+
+		public String toRow()
+		{
+			return numReleases + "\t" + releaseInterval + "\t" + numPerRelease + "\t" + initialNumber + "\t" + fsRIDL
+					+ "\t" + replicate + "\t" + seed + "\t" + daysElapsed + "\t" + total + "\t" + males + "\t" + females
+					+ "\t" + numFF + "\t" + numFf + "\t" + numff + "\t" + isSuccess();
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		System.setProperty("java.awt.headless", "true");
+		SweepRunner runner = new SweepRunner();
+		for(String arg: args)
+		{
+			runner.setParameter(arg);
+		}
+		runner.run();
+	}
+
+	/**
+	 * Sets one parameter from a name=value argument
+	 * @param arg The argument
+	 */
+	public void setParameter(String arg)
+	{
+		int equals = arg.indexOf('=');
+		if(equals < 0)
+		{
+			throw new IllegalArgumentException("Expected name=value but got " + arg);
+		}
+		String name = arg.substring(0, equals);
+		String value = arg.substring(equals + 1);
+		switch(name)
+		{
+		case "numReleases":
+			numReleases = parseRange(value); break;
+		case "releaseInterval":
+			releaseIntervals = parseRange(value); break;
+		case "numPerRelease":
+			numPerRelease = parseRange(value); break;
+		case "initialNumber":
+			initialNumbers = parseRange(value); break;
+		case "fsRIDL":
+			String[] parts = value.split(",");
+			fsRIDL = new boolean[parts.length];
+			for(int i = 0; i < parts.length; i++)
+			{
+				fsRIDL[i] = Boolean.parseBoolean(parts[i].trim());
+			}
+			break;
+		case "replicates":
+			replicates = Integer.parseInt(value); break;
+		case "days":
+			days = Double.parseDouble(value); break;
+		case "threads":
+			threads = Integer.parseInt(value); break;
+		case "seed":
+			seed = Long.parseLong(value); break;
+		case "out":
+			outputFile = value; break;
+		case "aggregated":
+			SimulationEngine.AGGREGATE_AQUATIC_STAGE = Boolean.parseBoolean(value); break;
+		case "checkpoint":
+			checkpoint = value; break;
+		case "burnIn":
+			burnInDays = Double.parseDouble(value); break;
+		case "cache":
+			cacheDirectory = value; break;
+		default:
+			throw new IllegalArgumentException("Unknown parameter " + name);
+		}
+	}
+
+	/**
+	 * Parses a single value, a comma separated list or an inclusive range start:end[:step]
+	 * @param value The text to parse
+	 * @return The values
+	 */
+	public static double[] parseRange(String value)
+	{
+		if(value.contains(":"))
+		{
+			String[] parts = value.split(":");
+			double start = Double.parseDouble(parts[0]);
+			double end = Double.parseDouble(parts[1]);
+			double step = parts.length > 2 ? Double.parseDouble(parts[2]) : 1;
+			if(step <= 0)
+			{
+				throw new IllegalArgumentException("Range step must be positive: " + value);
+			}
+			int n = (int)Math.floor((end - start) / step + 1e-9) + 1;
+			double[] values = new double[Math.max(n, 0)];
+			for(int i = 0; i < values.length; i++)
+			{
+				values[i] = start + i * step;
+			}
+			return values;
+		}
+		String[] parts = value.split(",");
+		double[] values = new double[parts.length];
+		for(int i = 0; i < parts.length; i++)
+		{
+			values[i] = Double.parseDouble(parts[i].trim());
+		}
+		return values;
+	}
+
+	/**
+	 * Expands the parameter ranges into the full job grid
+	 * @return One job per parameter combination and replicate
+	 */
+	public List<Job> getJobs() throws IOException
+	{
+		ArrayList<Job> jobs = new ArrayList<Job>();
+		RandomSource seeds = new RandomSource(seed);
+		BurnInCache burnIn = burnInDays > 0 ? new BurnInCache(new File(cacheDirectory), burnInDays) : null;
+		long[] burnInSeeds = new long[replicates];
+		RandomSource burnInSeedSource = new RandomSource(seed).split(); //separate from the job seeds, which stay as they were
+		for(int r = 0; r < replicates; r++)
+		{
+			burnInSeeds[r] = burnInSeedSource.nextLong();
+		}
+		for(double initialNumber: initialNumbers)
+		{
+			for(boolean lethal: fsRIDL)
+			{
+				for(double releases: numReleases)
+				{
+					for(double interval: releaseIntervals)
+					{
+						for(double perRelease: numPerRelease)
+						{
+							for(int r = 0; r < replicates; r++)
+							{
+								Job job = new Job((int)releases, interval, (int)perRelease, (int)initialNumber, lethal, r, days, seeds.nextLong());
+								job.start = getStartingState((int)initialNumber);
+								job.burnIn = burnIn;
+								job.burnInSeed = burnInSeeds[r];
+								jobs.add(job);
+							}
+						}
+					}
+				}
+			}
+		}
+		return jobs;
+	}
+
+	/**
+	 * @param initialNumber A job's initial number
+	 * @return The shared state the job should fork, or null if it builds its own engine
+	 * @throws IOException If the checkpoint could not be read
+	 */
+	private SimulationEngine getStartingState(int initialNumber) throws IOException
+	{
+		if(checkpoint == null && !SimulationEngine.startsFromSave(initialNumber))
+		{
+			return null;
+		}
+		if(savedState == null)
+		{
+			long start = System.nanoTime();
+			if(checkpoint != null)
+			{
+				savedState = Checkpoint.read(new File(checkpoint));
+			}
+			else
+			{
+				savedState = new SimulationEngine(600 * SimulationEngine.SCALE, 600 * SimulationEngine.SCALE,
+						SimulationEngine.DEFAULT_RADIUS, SimulationEngine.DEFAULT_SPEED, true, initialNumber, 0, 0, 0, seed);
+			}
+			System.out.println("Loaded the starting state of " + savedState.getPopulation().size() + " mosquitoes in "
+					+ (System.nanoTime() - start) / 1000000 + " ms");
+		}
+		return savedState;
+	}
+
+	/**
+	 * Runs every job in the grid and writes the result table
+	 */
+	public void run()
+	{
+		List<Job> jobs;
+		try
+		{
+			jobs = getJobs();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		System.out.println("Running " + jobs.size() + " simulations on " + threads + " threads, sweep seed " + seed);
+		long start = System.nanoTime();
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		List<Future<Job>> results;
+		try
+		{
+			results = pool.invokeAll(jobs);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+
+		PrintWriter printer = null;
+		try {
+			printer = new PrintWriter(outputFile);
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+			return;
+		}
+		printer.println("Number Releases\tRelease Interval\tNumber per release\tInitial number\tFemale lethal gene"
+				+ "\tReplicate\tSeed\tDays elapsed\tTotal Population\tMale Population\tFemale Population\tFF\tFf\tff\tSuccess");
+		int successes = 0;
+		for(Future<Job> result: results)
+		{
+			try
+			{
+				Job job = result.get();
+				printer.println(job.toRow());
+				if(job.isSuccess())
+				{
+					successes++;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException e) {
+				e.getCause().printStackTrace();
+			}
+		}
+		printer.close();
+		System.out.println(successes + " of " + jobs.size() + " runs succeeded. Wrote " + outputFile
+				+ " in " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+}
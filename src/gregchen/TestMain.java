@@ -39,14 +39,15 @@ public class TestMain
 		Simulation sim = new Simulation(600, 600, Simulation.DEFAULT_RADIUS, Simulation.DEFAULT_SPEED, 
 				true, true, 0, 0, 0, 0);
 		Mosquito.MORTALITY_PROB = 0;
-		Mosquito m1 = new Mosquito(Simulation.DEFAULT_RADIUS, new Position(349, 349), new Position(289, 300), Mosquito.DEFAULT_SPEED, Gender.MALE, Genotype.FF);
-		Mosquito m2 = new Mosquito(Simulation.DEFAULT_RADIUS, new Position(250, 250), new Position(311, 300), Mosquito.DEFAULT_SPEED, Gender.FEMALE, Genotype.ff);
+		RandomSource random = sim.getEngine().getRandom();
+		Mosquito m1 = new Mosquito(Simulation.DEFAULT_RADIUS, new Position(349, 349), new Position(289, 300), Mosquito.DEFAULT_SPEED, Gender.MALE, Genotype.FF, random);
+		Mosquito m2 = new Mosquito(Simulation.DEFAULT_RADIUS, new Position(250, 250), new Position(311, 300), Mosquito.DEFAULT_SPEED, Gender.FEMALE, Genotype.ff, random);
 		m1.setAge(10);
 		m2.setAge(10);
 		m1.setDirection(5*Math.PI/4);
 		m2.setDirection(1*Math.PI/4);
-		sim.getMosquitoes().add(m1);
-		sim.getMosquitoes().add(m2);
+		sim.getPopulation().add(m1);
+		sim.getPopulation().add(m2);
 		for(BreedingSite b:sim.getBreedingSites())
 		{
 			b.killAllPupae();
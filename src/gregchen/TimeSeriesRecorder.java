@@ -0,0 +1,136 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Samples the population counts of an engine into one or more {@link OutputSink}s.
+ * Call {@link #record} after every update; a row is written whenever the simulation
+ * day reaches the next sampling time, so the output size depends on the sampling
+ * interval rather than on the number of updates.
+ * @author Greg
+ *
+ */
+public class TimeSeriesRecorder
+{
+	/**
+	 * How often to write a row
+	 */
+	public enum Sampling
+	{
+		TICK(1.0 / SimulationEngine.UPDATES_PER_DAY), HOURLY(1.0 / 24), DAILY(1);
+
+		private final double interval;
+
+		private Sampling(double interval)
+		{
+			this.interval = interval;
+		}
+
+		/**
+		 * @return The time between rows, in days
+		 */
+		public double getInterval()
+		{
+			return interval;
+		}
+	}
+
+	private static final double EPSILON = 1e-9; //the day counter is a sum of 1/30s, so allow for rounding
+
+	private final ArrayList<OutputSink> sinks = new ArrayList<OutputSink>();
+	private final Sampling sampling;
+	private double nextSample = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * @param sampling How often to write a row
+	 */
+	public TimeSeriesRecorder(Sampling sampling)
+	{
+		this.sampling = sampling;
+	}
+
+	public void addSink(OutputSink sink)
+	{
+		sinks.add(sink);
+	}
+
+	/**
+	 * Writes a row to every sink if the engine has reached the next sampling time
+	 * @param engine The engine
+	 * @throws IOException If a sink could not write
+	 */
+	public void record(SimulationEngine engine) throws IOException
+	{
+		double day = engine.getSimulationDay();
+		if(day + EPSILON < nextSample)
+		{
+			return;
+		}
+		for(OutputSink sink: sinks)
+		{
+			sink.write(day, engine.getPopulation().size(), engine.getNumMales(), engine.getNumFemales(),
+					engine.getNumFF(), engine.getNumFf(), engine.getNumff());
+		}
+		//next multiple of the interval after this day
+		nextSample = (Math.floor((day + EPSILON) / sampling.getInterval()) + 1) * sampling.getInterval();
+	}
+
+	public Sampling getSampling()
+	{
+		return sampling;
+	}
+
+	public void flush() throws IOException
+	{
+		for(OutputSink sink: sinks)
+		{
+			sink.flush();
+		}
+	}
+
+	/**
+	 * Closes every sink, even if closing one fails
+	 * @throws IOException The first failure
+	 */
+	public void close() throws IOException
+	{
+		IOException failure = null;
+		for(OutputSink sink: sinks)
+		{
+			try
+			{
+				sink.close();
+			} catch (IOException e) {
+				if(failure == null)
+				{
+					failure = e;
+				}
+			}
+		}
+		sinks.clear();
+		if(failure != null)
+		{
+			throw failure;
+		}
+	}
+}
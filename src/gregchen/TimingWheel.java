@@ -0,0 +1,193 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Schedules items for a later update, so that something which will happen at a known
+ * time (a pupa emerging, a female laying her eggs) is dealt with once, when it is due,
+ * instead of being polled every update until it is. The wheel has one slot per update
+ * for the next getHorizon() updates; an item due further ahead waits in an overflow
+ * queue and moves into its slot once it comes within the horizon. Scheduling and
+ * advancing cost O(1) per item (O(log n) for the rare overflowing ones), however many
+ * items are waiting.
+ * <p>
+ * Items due in the same update come out in the order they were scheduled. Items are
+ * never cancelled; whoever drains them checks that they still apply (e.g. that the pupa
+ * is still alive).
+ * @author Greg
+ *
+ */
+public class TimingWheel<T>
+{
+	private final ArrayList<T>[] slots;
+	private final int mask;
+	private final PriorityQueue<Entry<T>> overflow = new PriorityQueue<Entry<T>>();
+	private long now = 0;
+	private long sequence = 0; //keeps overflowing items due in the same update in order
+	private int size = 0;
+
+	/**
+	 * @param horizon The number of updates ahead the wheel holds directly, rounded up to a power of two
+	 */
+	public TimingWheel(int horizon)
+	{
+		int length = Integer.highestOneBit(Math.max(horizon, 2) - 1) << 1;
+		@SuppressWarnings("unchecked")
+		ArrayList<T>[] array = (ArrayList<T>[])new ArrayList<?>[length];
+		slots = array;
+		for(int i = 0; i < length; i++)
+		{
+			slots[i] = new ArrayList<T>();
+		}
+		mask = length - 1;
+	}
+
+	/**
+	 * Copy constructor, e.g. for forking a simulation. The items themselves are shared.
+	 * @param other The wheel to copy
+	 */
+	public TimingWheel(TimingWheel<T> other)
+	{
+		this(other.slots.length);
+		for(int i = 0; i < slots.length; i++)
+		{
+			slots[i].addAll(other.slots[i]);
+		}
+		for(Entry<T> entry: other.overflow)
+		{
+			overflow.add(entry);
+		}
+		now = other.now;
+		sequence = other.sequence;
+		size = other.size;
+	}
+
+	/**
+	 * @return The last update drained by advance, 0 before the first
+	 */
+	public long getNow()
+	{
+		return now;
+	}
+
+	public int getHorizon()
+	{
+		return slots.length;
+	}
+
+	/**
+	 * @return The number of items waiting
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Schedules an item
+	 * @param update The update it is due in, after getNow()
+	 * @param item The item
+	 */
+	public void schedule(long update, T item)
+	{
+		if(update <= now)
+		{
+			throw new IllegalArgumentException("Update " + update + " has already been drained (now " + now + ")");
+		}
+		if(update - now < slots.length)
+		{
+			slots[(int)(update & mask)].add(item);
+		}
+		else
+		{
+			overflow.add(new Entry<T>(update, sequence++, item));
+		}
+		size++;
+	}
+
+	/**
+	 * Schedules an item a number of updates from now
+	 * @param delay At least 1
+	 * @param item The item
+	 */
+	public void scheduleIn(long delay, T item)
+	{
+		schedule(now + delay, item);
+	}
+
+	/**
+	 * Moves on to the next update and hands over the items due in it
+	 * @param due The items are added to the end of this list, in the order they were scheduled
+	 */
+	public void advance(List<? super T> due)
+	{
+		now++;
+		//anything now within the horizon goes into its slot before anything scheduled directly there
+		while(!overflow.isEmpty() && overflow.peek().update - now < slots.length)
+		{
+			Entry<T> entry = overflow.poll();
+			slots[(int)(entry.update & mask)].add(entry.item);
+		}
+		ArrayList<T> slot = slots[(int)(now & mask)];
+		due.addAll(slot);
+		size -= slot.size();
+		slot.clear();
+	}
+
+	/**
+	 * Drops every item, keeping the current update
+	 */
+	public void clear()
+	{
+		for(ArrayList<T> slot: slots)
+		{
+			slot.clear();
+		}
+		overflow.clear();
+		size = 0;
+	}
+
+	private static class Entry<T> implements Comparable<Entry<T>>
+	{
+		final long update, sequence;
+		final T item;
+
+		Entry(long update, long sequence, T item)
+		{
+			this.update = update;
+			this.sequence = sequence;
+			this.item = item;
+		}
+
+		@Override
+		public int compareTo(Entry<T> other)
+		{
+			if(update != other.update)
+			{
+				return Long.compare(update, other.update);
+			}
+			return Long.compare(sequence, other.sequence);
+		}
+	}
+}
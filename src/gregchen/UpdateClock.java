@@ -0,0 +1,123 @@
+﻿/*
+ * Copyright 2013 Gregory M Chen
+   This file is part of the project MosquitoSimulation.
+
+    MosquitoSimulation is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    MosquitoSimulation is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with MosquitoSimulation.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package gregchen;
+
+/**
+ * Converts between the day counters of the life cycle and numbers of updates. The
+ * simulation ages things by adding 1/30 of a day every update, and the rounding of
+ * those sums decides exactly which update crosses a threshold (e.g. whether 60 updates
+ * make more than 2 days). Scheduling an event for "when the counter passes x" has to
+ * find the same update, so these methods give exactly the result of repeating the
+ * additions rather than dividing.
+ * <p>
+ * They do not repeat them one by one, though. Between two powers of two every double is
+ * a multiple of the same ulp, so every addition rounds 1/30 to the same multiple of it
+ * (after the first, which settles a tie to an even result). A whole run of additions up
+ * to the next power of two is then one multiplication, and a counter crosses a power of
+ * two only a handful of times, so the cost does not grow with the number of updates.
+ * @author Greg
+ *
+ */
+public final class UpdateClock
+{
+	private static final double DAYS_PER_UPDATE = 1d / SimulationEngine.UPDATES_PER_DAY;
+
+	private UpdateClock()
+	{
+	}
+
+	/**
+	 * @param days A counter
+	 * @param updates A number of updates
+	 * @return The counter after being aged by that many updates
+	 */
+	public static double advance(double days, long updates)
+	{
+		while(updates > 0)
+		{
+			days += DAYS_PER_UPDATE;
+			updates--;
+			long ulps = getUlpsPerUpdate(days);
+			if(ulps > 0 && updates > 0)
+			{
+				long n = Math.min(updates, getUpdatesLeftInBinade(days, ulps));
+				days += n * ulps * Math.ulp(days);
+				updates -= n;
+			}
+		}
+		return days;
+	}
+
+	/**
+	 * @param days A counter
+	 * @param threshold A number of days
+	 * @return The fewest updates (possibly 0) after which the counter is above the threshold
+	 */
+	public static int updatesUntilAbove(double days, double threshold)
+	{
+		long n = 0;
+		while(days <= threshold)
+		{
+			days += DAYS_PER_UPDATE;
+			n++;
+			long ulps = getUlpsPerUpdate(days);
+			if(ulps > 0 && days <= threshold)
+			{
+				long left = getUpdatesLeftInBinade(days, ulps);
+				if(threshold < 2 * Math.scalb(1d, Math.getExponent(days)))
+				{
+					//the threshold is a multiple of the same ulp, so the run crosses it exactly
+					long toCross = (long)((threshold - days) / Math.ulp(days)) / ulps + 1;
+					if(toCross <= left)
+					{
+						return (int)(n + toCross);
+					}
+				}
+				days += left * ulps * Math.ulp(days);
+				n += left;
+			}
+		}
+		return (int)n;
+	}
+
+	/**
+	 * @return The number of ulps every further addition adds to a counter, as long as it stays
+	 * below the next power of two, or 0 if it is too small for that to hold
+	 */
+	private static long getUlpsPerUpdate(double days)
+	{
+		double next = days + DAYS_PER_UPDATE;
+		if(days < DAYS_PER_UPDATE || Math.getExponent(next) != Math.getExponent(days))
+		{
+			return 0;
+		}
+		return (long)((next - days) / Math.ulp(days));
+	}
+
+	/**
+	 * @return The number of additions of ulps ulps which keep a counter below the next power of two
+	 */
+	private static long getUpdatesLeftInBinade(double days, long ulps)
+	{
+		double limit = 2 * Math.scalb(1d, Math.getExponent(days));
+		long room = (long)((limit - days) / Math.ulp(days));
+		return (room - 1) / ulps;
+	}
+}